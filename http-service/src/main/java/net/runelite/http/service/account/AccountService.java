@@ -99,6 +99,7 @@ public class AccountService
 	private final String oauthClientSecret;
 	private final String oauthCallback;
 	private final AuthFilter auth;
+	private final SessionTokenService sessionTokenService;
 	private final String redirHost;
 
 	@Autowired
@@ -110,6 +111,7 @@ public class AccountService
 		@Value("${oauth.callback-snapshot}") String oauthSnapshotCallback,
 		@Value("#{servletContext.contextPath}") String contextPath,
 		AuthFilter auth,
+		SessionTokenService sessionTokenService,
 		@Value("${oauth.redir-host}") String redirHost
 	)
 	{
@@ -117,6 +119,7 @@ public class AccountService
 		this.oauthClientId = oauthClientId;
 		this.oauthClientSecret = oauthClientSecret;
 		this.auth = auth;
+		this.sessionTokenService = sessionTokenService;
 		this.redirHost = redirHost;
 
 		this.oauthCallback = contextPath.toLowerCase().contains("snapshot") ? oauthSnapshotCallback : oauthCallback;
@@ -213,6 +216,7 @@ public class AccountService
 
 		// secret session id
 		final UUID uuid = UUID.randomUUID();
+		String sessionToken = null;
 
 		try (Connection con = sql2o.open())
 		{
@@ -237,6 +241,11 @@ public class AccountService
 				.executeUpdate();
 
 			logger.info("Created session for user {}", userInfo.getEmail());
+
+			if (sessionTokenService.isEnabled())
+			{
+				sessionToken = sessionTokenService.issue(user.getId(), uuid);
+			}
 		}
 
 		HttpUrl redir;
@@ -267,6 +276,14 @@ public class AccountService
 				.addQueryParameter("sessionId", uuid.toString())
 				.build();
 		}
+
+		if (sessionToken != null)
+		{
+			// clients which understand signed tokens send them in place of the session id
+			redir = redir.newBuilder()
+				.addQueryParameter("sessionToken", sessionToken)
+				.build();
+		}
 		response.sendRedirect(redir.toString());
 
 		return "";
@@ -46,6 +46,7 @@ import org.sql2o.Sql2o;
 public class AuthFilter
 {
 	private final Sql2o sql2o;
+	private final SessionTokenService sessionTokenService;
 
 	private final Cache<UUID, SessionEntry> sessionCache = CacheBuilder.newBuilder()
 		.maximumSize(10000L)
@@ -54,9 +55,10 @@ public class AuthFilter
 		.build();
 
 	@Autowired
-	public AuthFilter(@Qualifier("Runelite SQL2O") Sql2o sql2o)
+	public AuthFilter(@Qualifier("Runelite SQL2O") Sql2o sql2o, SessionTokenService sessionTokenService)
 	{
 		this.sql2o = sql2o;
+		this.sessionTokenService = sessionTokenService;
 	}
 
 	public SessionEntry handle(HttpServletRequest request, HttpServletResponse response) throws IOException
@@ -68,7 +70,29 @@ public class AuthFilter
 			return null;
 		}
 
-		UUID uuid = UUID.fromString(runeliteAuth);
+		UUID uuid;
+		if (SessionTokenService.isToken(runeliteAuth))
+		{
+			SessionEntry tokenSession = sessionTokenService.verify(runeliteAuth);
+			if (tokenSession == null || sessionTokenService.isRevoked(tokenSession.getUuid()))
+			{
+				response.sendError(401, "Access denied");
+				return null;
+			}
+
+			if (!sessionTokenService.isExpired(tokenSession))
+			{
+				return tokenSession;
+			}
+
+			// expired tokens are still accepted as long as their session exists
+			uuid = tokenSession.getUuid();
+		}
+		else
+		{
+			uuid = UUID.fromString(runeliteAuth);
+		}
+
 		SessionEntry sessionEntry = sessionCache.getIfPresent(uuid);
 		if (sessionEntry != null)
 		{
@@ -111,6 +135,7 @@ public class AuthFilter
 	{
 		// If we ever run multiple services, may need to publish something here to invalidate...
 		sessionCache.invalidate(uuid);
+		sessionTokenService.revoke(uuid);
 	}
 
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.account;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import net.runelite.http.service.account.beans.SessionEntry;
+import net.runelite.http.service.util.redis.RedisPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Issues and verifies HMAC signed session tokens. A token carries the user id and session uuid,
+ * so it can be verified without a database lookup. Tokens are disabled unless a secret is configured.
+ */
+@Service
+public class SessionTokenService
+{
+	private static final String VERSION = "v1";
+	private static final Splitter SPLITTER = Splitter.on('.');
+	private static final BaseEncoding BASE64 = BaseEncoding.base64Url().omitPadding();
+
+	private final RedisPool redisPool;
+	private final HashFunction hmac;
+	private final Duration ttl;
+	/**
+	 * Recent revocation lookups, so each request doesn't need a round trip to redis.
+	 * A logout on another instance is observed once the entry expires.
+	 */
+	private final Cache<UUID, Boolean> revokedCache;
+
+	@Autowired
+	public SessionTokenService(
+		RedisPool redisPool,
+		@Value("${auth.token.secret:}") String secret,
+		@Value("${auth.token.ttl:30}") int ttlDays,
+		@Value("${auth.token.revoked.cache.seconds:5}") int revokedCacheSeconds
+	)
+	{
+		this.redisPool = redisPool;
+		this.hmac = Strings.isNullOrEmpty(secret) ? null : Hashing.hmacSha256(secret.getBytes(StandardCharsets.UTF_8));
+		this.ttl = Duration.ofDays(ttlDays);
+		this.revokedCache = CacheBuilder.newBuilder()
+			.maximumSize(100_000L)
+			.expireAfterWrite(revokedCacheSeconds, TimeUnit.SECONDS)
+			.build();
+	}
+
+	public boolean isEnabled()
+	{
+		return hmac != null;
+	}
+
+	public String issue(int userId, UUID uuid)
+	{
+		String payload = VERSION + "." + userId + "." + uuid + "." + Instant.now().getEpochSecond();
+		return payload + "." + sign(payload);
+	}
+
+	static boolean isToken(String auth)
+	{
+		return auth.startsWith(VERSION + ".");
+	}
+
+	/**
+	 * Verify the signature of a token
+	 *
+	 * @param token
+	 * @return the session the token was issued for, or null if the token is invalid
+	 */
+	@Nullable
+	public SessionEntry verify(String token)
+	{
+		if (hmac == null)
+		{
+			return null;
+		}
+
+		int idx = token.lastIndexOf('.');
+		if (idx == -1)
+		{
+			return null;
+		}
+
+		String payload = token.substring(0, idx);
+		byte[] signature = token.substring(idx + 1).getBytes(StandardCharsets.UTF_8);
+		if (!MessageDigest.isEqual(sign(payload).getBytes(StandardCharsets.UTF_8), signature))
+		{
+			return null;
+		}
+
+		List<String> parts = SPLITTER.splitToList(payload);
+		if (parts.size() != 4)
+		{
+			return null;
+		}
+
+		SessionEntry sessionEntry = new SessionEntry();
+		try
+		{
+			sessionEntry.setUser(Integer.parseInt(parts.get(1)));
+			sessionEntry.setUuid(UUID.fromString(parts.get(2)));
+			sessionEntry.setCreated(Instant.ofEpochSecond(Long.parseLong(parts.get(3))));
+		}
+		catch (IllegalArgumentException ex)
+		{
+			return null;
+		}
+		return sessionEntry;
+	}
+
+	public boolean isExpired(SessionEntry session)
+	{
+		return session.getCreated().plus(ttl).isBefore(Instant.now());
+	}
+
+	/**
+	 * Add a session to the revocation list. Entries only need to live as long as the tokens,
+	 * expired tokens are always checked against the sessions table.
+	 *
+	 * @param uuid
+	 */
+	public void revoke(UUID uuid)
+	{
+		if (hmac == null)
+		{
+			return;
+		}
+
+		String key = "session.revoked." + uuid;
+		redisPool.execute(key, jedis -> jedis.setex(key, (int) ttl.getSeconds(), "1"));
+		revokedCache.put(uuid, true);
+	}
+
+	public boolean isRevoked(UUID uuid)
+	{
+		Boolean revoked = revokedCache.getIfPresent(uuid);
+		if (revoked == null)
+		{
+			String key = "session.revoked." + uuid;
+			revoked = redisPool.execute(key, jedis -> jedis.exists(key));
+			revokedCache.put(uuid, revoked);
+		}
+		return revoked;
+	}
+
+	private String sign(String payload)
+	{
+		return BASE64.encode(hmac.hashString(payload, StandardCharsets.UTF_8).asBytes());
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.cache;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.http.service.cache.beans.ArchiveEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/cache")
+public class CacheController
+{
+	/**
+	 * Archives requested by crc never change, so they can be cached indefinitely
+	 */
+	private static final String IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().getHeaderValue() + ", immutable";
+	/**
+	 * Archives requested without a crc change when a new cache is released
+	 */
+	private static final String MUTABLE = CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic().getHeaderValue();
+
+	private final CacheService cacheService;
+
+	@Autowired
+	public CacheController(CacheService cacheService)
+	{
+		this.cacheService = cacheService;
+	}
+
+	@GetMapping("/{index}/{archive}")
+	public ResponseEntity<byte[]> getArchive(
+		WebRequest webRequest,
+		@PathVariable int index,
+		@PathVariable int archive,
+		@RequestParam(required = false) Integer crc
+	)
+	{
+		ArchiveEntry archiveEntry = crc != null
+			? cacheService.findArchiveByCrc(index, archive, crc)
+			: cacheService.findMostRecentArchive(index, archive);
+		if (archiveEntry == null)
+		{
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "archive not found");
+		}
+
+		// the crc and revision identify the archive contents
+		String etag = "\"" + Integer.toHexString(archiveEntry.getCrc()) + "-" + archiveEntry.getRevision() + "\"";
+		String cacheControl = crc != null ? IMMUTABLE : MUTABLE;
+		if (webRequest.checkNotModified(etag))
+		{
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+				.header(HttpHeaders.CACHE_CONTROL, cacheControl)
+				.build();
+		}
+
+		byte[] data = cacheService.getArchive(archiveEntry);
+		if (data == null)
+		{
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "archive not found");
+		}
+
+		return ResponseEntity.ok()
+			.eTag(etag)
+			.header(HttpHeaders.CACHE_CONTROL, cacheControl)
+			.contentType(MediaType.APPLICATION_OCTET_STREAM)
+			.body(data);
+	}
+}
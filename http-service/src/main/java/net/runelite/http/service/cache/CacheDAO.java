@@ -24,10 +24,20 @@
  */
 package net.runelite.http.service.cache;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
+import net.runelite.http.service.cache.beans.ArchiveDataEntry;
 import net.runelite.http.service.cache.beans.ArchiveEntry;
 import net.runelite.http.service.cache.beans.CacheEntry;
 import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.ResultSetHandler;
 
 @RequiredArgsConstructor
 class CacheDAO
@@ -53,6 +63,113 @@ class CacheDAO
 			.executeAndFetchFirst(ArchiveEntry.class);
 	}
 
+	/**
+	 * Find an archive in the most recent cache with a single query
+	 */
+	ArchiveEntry findMostRecentArchive(int index, int archive)
+	{
+		return conn.createQuery("select a.id, a.index, a.archive, a.crc, a.name, a.revision, a.data_id from cache_archive ca " +
+			"join archive a on ca.archive_id = a.id where ca.cache_id = (select id from cache order by revision desc, date desc limit 1) " +
+			"and a.index = :index_id and a.archive = :archive_id")
+			.addParameter("index_id", index)
+			.addParameter("archive_id", archive)
+			.addColumnMapping("index", "indexId")
+			.addColumnMapping("archive", "archiveId")
+			.addColumnMapping("data_id", "dataId")
+			.executeAndFetchFirst(ArchiveEntry.class);
+	}
+
+	/**
+	 * Find several archives of a cache along with their data in a single query
+	 */
+	List<ArchiveDataEntry> findArchivesWithData(CacheEntry cacheEntry, Collection<ArchiveKey> archives)
+	{
+		if (archives.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		Query query = createArchivesWithDataQuery(":cache_id", archives)
+			.addParameter("cache_id", cacheEntry.getId());
+		addArchiveParameters(query, archives);
+		return query
+			.addColumnMapping("index", "indexId")
+			.addColumnMapping("archive", "archiveId")
+			.addColumnMapping("data_id", "dataId")
+			.executeAndFetch(ArchiveDataEntry.class);
+	}
+
+	/**
+	 * Find several archives of the most recent cache in a single query. The data of the returned
+	 * archives is the decompressed contents of the container, which is streamed from the blob.
+	 */
+	List<ArchiveDataEntry> findMostRecentArchiveContents(Collection<ArchiveKey> archives)
+	{
+		if (archives.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		Query query = createArchivesWithDataQuery("(select id from cache order by revision desc, date desc limit 1)", archives);
+		addArchiveParameters(query, archives);
+		return query.executeAndFetch((ResultSetHandler<ArchiveDataEntry>) CacheDAO::mapArchiveContents);
+	}
+
+	private Query createArchivesWithDataQuery(String cacheId, Collection<ArchiveKey> archives)
+	{
+		StringBuilder sql = new StringBuilder("select a.id, a.index, a.archive, a.crc, a.name, a.revision, a.data_id, d.data from cache_archive ca " +
+			"join archive a on ca.archive_id = a.id join data d on a.data_id = d.id where ca.cache_id = ")
+			.append(cacheId)
+			.append(" and (");
+		for (int i = 0; i < archives.size(); ++i)
+		{
+			if (i > 0)
+			{
+				sql.append(" or ");
+			}
+			sql.append("(a.index = :index_id").append(i).append(" and a.archive = :archive_id").append(i).append(')');
+		}
+		sql.append(')');
+		return conn.createQuery(sql.toString());
+	}
+
+	private static void addArchiveParameters(Query query, Collection<ArchiveKey> archives)
+	{
+		int i = 0;
+		for (ArchiveKey archive : archives)
+		{
+			query.addParameter("index_id" + i, archive.getIndex())
+				.addParameter("archive_id" + i, archive.getArchive());
+			++i;
+		}
+	}
+
+	private static ArchiveDataEntry mapArchiveContents(ResultSet rs) throws SQLException
+	{
+		ArchiveDataEntry entry = new ArchiveDataEntry();
+		entry.setId(rs.getInt("id"));
+		entry.setIndexId(rs.getInt("index"));
+		entry.setArchiveId(rs.getInt("archive"));
+		entry.setCrc(rs.getInt("crc"));
+		entry.setName(rs.getInt("name"));
+		entry.setRevision(rs.getInt("revision"));
+		entry.setDataId(rs.getInt("data_id"));
+		entry.setData(readContents(rs));
+		return entry;
+	}
+
+	private static byte[] readContents(ResultSet rs) throws SQLException
+	{
+		try (InputStream in = rs.getBinaryStream("data"))
+		{
+			return ContainerStreams.decompress(in);
+		}
+		catch (IOException ex)
+		{
+			throw new SQLException("unable to decompress archive data", ex);
+		}
+	}
+
 	byte[] getArchiveData(ArchiveEntry archiveEntry)
 	{
 		return conn.createQuery("select data from data where id = :data_id")
@@ -60,6 +177,16 @@ class CacheDAO
 			.executeAndFetchFirst(byte[].class);
 	}
 
+	/**
+	 * Get the decompressed contents of an archive, streaming the container from the blob
+	 */
+	byte[] getArchiveContents(ArchiveEntry archiveEntry)
+	{
+		return conn.createQuery("select data from data where id = :data_id")
+			.addParameter("data_id", archiveEntry.getDataId())
+			.executeAndFetchFirst((ResultSetHandler<byte[]>) CacheDAO::readContents);
+	}
+
 	ArchiveEntry findArchiveByName(CacheEntry cache, int index, int name)
 	{
 		return conn.createQuery("select a.id, a.index, a.archive, a.crc, a.name, a.revision, a.data_id from cache_archive ca " +
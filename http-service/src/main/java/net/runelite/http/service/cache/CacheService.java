@@ -24,26 +24,33 @@
  */
 package net.runelite.http.service.cache;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.cache.ConfigType;
 import net.runelite.cache.IndexType;
 import net.runelite.cache.definitions.ItemDefinition;
 import net.runelite.cache.definitions.loaders.ItemLoader;
 import net.runelite.cache.fs.ArchiveFiles;
-import net.runelite.cache.fs.Container;
 import net.runelite.cache.fs.FSFile;
 import net.runelite.cache.index.ArchiveData;
 import net.runelite.cache.index.FileData;
 import net.runelite.cache.index.IndexData;
+import net.runelite.http.service.cache.beans.ArchiveDataEntry;
 import net.runelite.http.service.cache.beans.ArchiveEntry;
 import net.runelite.http.service.cache.beans.CacheEntry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.sql2o.Connection;
 import org.sql2o.Sql2o;
@@ -52,23 +59,79 @@ import org.sql2o.Sql2o;
 @Slf4j
 public class CacheService
 {
+	// more than the number of archives in a cache
+	private static final int MAX_ARCHIVES = 65536;
+
+	private final Sql2o sql2o;
+
+	/**
+	 * Raw archive data by data id. Data rows are never modified, so entries never need invalidating.
+	 */
+	private final Cache<Integer, byte[]> archiveData;
+
+	/**
+	 * Archives by their crc. The contents of an archive with a given crc never change, so these
+	 * are kept until evicted.
+	 */
+	private final Cache<ArchiveCrc, ArchiveEntry> archivesByCrc;
+
+	/**
+	 * The most recent version of archives, kept briefly so requests for the current version of an
+	 * archive don't each query the database
+	 */
+	private final Cache<ArchiveKey, ArchiveEntry> mostRecentArchives;
+
+	/**
+	 * The last loaded item archive, reused while its crc and revision are unchanged
+	 */
+	private volatile CachedArchive itemArchive;
+
 	@Autowired
-	@Qualifier("Runelite Cache SQL2O")
-	private Sql2o sql2o;
+	public CacheService(
+		@Qualifier("Runelite Cache SQL2O") Sql2o sql2o,
+		@Value("${runelite.cache.archives.bytes:67108864}") long archiveCacheBytes,
+		@Value("${runelite.cache.archives.recent.seconds:30}") int mostRecentSeconds
+	)
+	{
+		this.sql2o = sql2o;
+		this.archiveData = CacheBuilder.newBuilder()
+			.maximumWeight(archiveCacheBytes)
+			.weigher((Integer k, byte[] v) -> v.length)
+			.build();
+		this.archivesByCrc = CacheBuilder.newBuilder()
+			.maximumSize(MAX_ARCHIVES)
+			.build();
+		this.mostRecentArchives = CacheBuilder.newBuilder()
+			.maximumSize(MAX_ARCHIVES)
+			.expireAfterWrite(mostRecentSeconds, TimeUnit.SECONDS)
+			.build();
+	}
 
 	/**
-	 * retrieve archive from storage
+	 * retrieve archive from storage, or from memory if it has been recently read
 	 *
 	 * @param archiveEntry
 	 * @return
 	 */
 	public byte[] getArchive(ArchiveEntry archiveEntry)
 	{
+		byte[] data = archiveData.getIfPresent(archiveEntry.getDataId());
+		if (data != null)
+		{
+			return data;
+		}
+
 		try (Connection con = sql2o.open())
 		{
 			CacheDAO cacheDao = new CacheDAO(con);
-			return cacheDao.getArchiveData(archiveEntry);
+			data = cacheDao.getArchiveData(archiveEntry);
 		}
+
+		if (data != null)
+		{
+			archiveData.put(archiveEntry.getDataId(), data);
+		}
+		return data;
 	}
 
 	public CacheEntry findMostRecent()
@@ -80,6 +143,57 @@ public class CacheService
 		}
 	}
 
+	/**
+	 * find an archive in the most recent cache
+	 *
+	 * @param index
+	 * @param archive
+	 * @return
+	 */
+	public ArchiveEntry findMostRecentArchive(int index, int archive)
+	{
+		ArchiveKey key = new ArchiveKey(index, archive);
+		ArchiveEntry archiveEntry = mostRecentArchives.getIfPresent(key);
+		if (archiveEntry != null)
+		{
+			return archiveEntry;
+		}
+
+		try (Connection con = sql2o.open())
+		{
+			CacheDAO cacheDao = new CacheDAO(con);
+			archiveEntry = cacheDao.findMostRecentArchive(index, archive);
+		}
+
+		if (archiveEntry != null)
+		{
+			mostRecentArchives.put(key, archiveEntry);
+			archivesByCrc.put(new ArchiveCrc(index, archive, archiveEntry.getCrc()), archiveEntry);
+		}
+		return archiveEntry;
+	}
+
+	/**
+	 * find the version of an archive with the given crc, if it is in the most recent cache or was
+	 * recently served
+	 *
+	 * @param index
+	 * @param archive
+	 * @param crc
+	 * @return
+	 */
+	public ArchiveEntry findArchiveByCrc(int index, int archive, int crc)
+	{
+		ArchiveEntry archiveEntry = archivesByCrc.getIfPresent(new ArchiveCrc(index, archive, crc));
+		if (archiveEntry != null)
+		{
+			return archiveEntry;
+		}
+
+		archiveEntry = findMostRecentArchive(index, archive);
+		return archiveEntry != null && archiveEntry.getCrc() == crc ? archiveEntry : null;
+	}
+
 	public ArchiveEntry findArchiveForTypeAndName(CacheEntry cache, int index, int nameHash)
 	{
 		try (Connection con = sql2o.open())
@@ -89,64 +203,162 @@ public class CacheService
 		}
 	}
 
-	private ArchiveFiles loadArchiveFiles(int indexId, int archiveId) throws IOException
+	private CachedArchive loadArchive(int indexId, int archiveId) throws IOException
 	{
+		ArchiveKey indexKey = new ArchiveKey(255, indexId);
+		ArchiveKey archiveKey = new ArchiveKey(indexId, archiveId);
+
+		// the index header and the archive are read together, and decompressed as they are read
+		Map<ArchiveKey, ArchiveDataEntry> archives;
 		try (Connection con = sql2o.open())
 		{
 			CacheDAO cacheDao = new CacheDAO(con);
-			CacheEntry cache = cacheDao.findMostRecent();
-			if (cache == null)
+			archives = byKey(cacheDao.findMostRecentArchiveContents(Arrays.asList(indexKey, archiveKey)));
+		}
+
+		ArchiveDataEntry idx = archives.get(indexKey);
+		ArchiveDataEntry archive = archives.get(archiveKey);
+		if (idx == null || archive == null)
+		{
+			return null;
+		}
+
+		// file data required to parse the archive is in the index header, so read that first
+		ArchiveFiles archiveFiles;
+		{
+			IndexData indexData = new IndexData();
+			indexData.load(idx.getData());
+			ArchiveData itemArchive = Arrays.stream(indexData.getArchives())
+				.filter(a -> a.getId() == archiveId)
+				.findFirst()
+				.get();
+			FileData[] files = itemArchive.getFiles();
+
+			archiveFiles = new ArchiveFiles();
+			for (FileData fileData : files)
 			{
-				return null;
+				FSFile file = new FSFile(fileData.getId());
+				file.setNameHash(fileData.getNameHash());
+				archiveFiles.addFile(file);
 			}
+		}
+
+		// now unpack the files of the archive
+		archiveFiles.loadContents(archive.getData());
+		return new CachedArchive(archive, archiveFiles);
+	}
 
-			// file data required to parse the archive is in the index header, so read that first
-			ArchiveFiles archiveFiles;
+	/**
+	 * retrieve several archives of a cache and their data from storage with a single query. The data
+	 * read is kept in memory for later {@link #getArchive(ArchiveEntry)} calls.
+	 *
+	 * @param cache
+	 * @param archives
+	 * @return the archives which were found
+	 */
+	public Map<ArchiveKey, ArchiveDataEntry> getArchives(CacheEntry cache, Collection<ArchiveKey> archives)
+	{
+		List<ArchiveDataEntry> entries;
+		try (Connection con = sql2o.open())
+		{
+			CacheDAO cacheDao = new CacheDAO(con);
+			entries = cacheDao.findArchivesWithData(cache, archives);
+		}
+
+		for (ArchiveDataEntry entry : entries)
+		{
+			if (entry.getData() != null)
 			{
-				ArchiveEntry idx = cacheDao.findArchive(cache, 255, indexId);
-				byte[] data = cacheDao.getArchiveData(idx);
-				Container container = Container.decompress(data, null);
-				IndexData indexData = new IndexData();
-				indexData.load(container.data);
-				ArchiveData itemArchive = Arrays.stream(indexData.getArchives())
-					.filter(a -> a.getId() == archiveId)
-					.findFirst()
-					.get();
-				FileData[] files = itemArchive.getFiles();
-
-				archiveFiles = new ArchiveFiles();
-				for (FileData fileData : files)
-				{
-					FSFile file = new FSFile(fileData.getId());
-					file.setNameHash(fileData.getNameHash());
-					archiveFiles.addFile(file);
-				}
+				archiveData.put(entry.getDataId(), entry.getData());
 			}
+		}
+		return byKey(entries);
+	}
 
-			// now read the archive and unpack the files
-			ArchiveEntry archive = cacheDao.findArchive(cache, indexId, archiveId);
-			byte[] data = cacheDao.getArchiveData(archive);
-			Container container = Container.decompress(data, null);
-			archiveFiles.loadContents(container.data);
-			return archiveFiles;
+	private static Map<ArchiveKey, ArchiveDataEntry> byKey(List<ArchiveDataEntry> entries)
+	{
+		Map<ArchiveKey, ArchiveDataEntry> archives = new HashMap<>(entries.size());
+		for (ArchiveDataEntry entry : entries)
+		{
+			archives.put(new ArchiveKey(entry.getIndexId(), entry.getArchiveId()), entry);
 		}
+		return archives;
 	}
 
+	/**
+	 * Get the item definitions of the most recent cache. The same list is returned until the item
+	 * archive changes.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
 	public List<ItemDefinition> getItems() throws IOException
 	{
-		ArchiveFiles files = loadArchiveFiles(IndexType.CONFIGS.getNumber(), ConfigType.ITEM.getId());
-		if (files == null)
+		final int indexId = IndexType.CONFIGS.getNumber();
+		final int archiveId = ConfigType.ITEM.getId();
+
+		ArchiveEntry archive;
+		try (Connection con = sql2o.open())
+		{
+			CacheDAO cacheDao = new CacheDAO(con);
+			archive = cacheDao.findMostRecentArchive(indexId, archiveId);
+		}
+
+		if (archive == null)
 		{
 			return Collections.emptyList();
 		}
 
-		final ItemLoader itemLoader = new ItemLoader();
-		final List<ItemDefinition> result = new ArrayList<>(files.getFiles().size());
-		for (FSFile file : files.getFiles())
+		CachedArchive cached = itemArchive;
+		if (cached == null || !cached.isCurrent(archive))
+		{
+			cached = loadArchive(indexId, archiveId);
+			if (cached == null)
+			{
+				return Collections.emptyList();
+			}
+
+			log.debug("Loaded item archive revision {} crc {}", cached.revision, cached.crc);
+			itemArchive = cached;
+		}
+
+		return cached.getItems();
+	}
+
+	private static class CachedArchive
+	{
+		final int crc;
+		final int revision;
+		final ArchiveFiles files;
+		private List<ItemDefinition> items;
+
+		CachedArchive(ArchiveEntry archive, ArchiveFiles files)
+		{
+			this.crc = archive.getCrc();
+			this.revision = archive.getRevision();
+			this.files = files;
+		}
+
+		boolean isCurrent(ArchiveEntry archive)
 		{
-			ItemDefinition itemDef = itemLoader.load(file.getFileId(), file.getContents());
-			result.add(itemDef);
+			return archive.getCrc() == crc && archive.getRevision() == revision;
+		}
+
+		// items are only decoded once they are requested
+		synchronized List<ItemDefinition> getItems() throws IOException
+		{
+			if (items == null)
+			{
+				final ItemLoader itemLoader = new ItemLoader();
+				final List<ItemDefinition> result = new ArrayList<>(files.getFiles().size());
+				for (FSFile file : files.getFiles())
+				{
+					ItemDefinition itemDef = itemLoader.load(file.getFileId(), file.getContents());
+					result.add(itemDef);
+				}
+				items = Collections.unmodifiableList(result);
+			}
+			return items;
 		}
-		return result;
 	}
 }
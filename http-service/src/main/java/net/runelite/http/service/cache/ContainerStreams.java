@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.cache;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.GZIPInputStream;
+import net.runelite.cache.fs.jagex.CompressionType;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Decompresses unencrypted cache containers from a stream, without first reading the compressed
+ * container into memory. The decompressed length is in the container header, so the output is
+ * decompressed straight into an array of the exact size.
+ */
+class ContainerStreams
+{
+	// bzip2 containers have the stream header stripped
+	private static final byte[] BZIP_HEADER = new byte[]{'B', 'Z', 'h', '1'};
+
+	static byte[] decompress(InputStream stream) throws IOException
+	{
+		DataInputStream in = new DataInputStream(stream);
+		int compression = in.readUnsignedByte();
+		int compressedLength = in.readInt();
+		if (compressedLength < 0)
+		{
+			throw new IOException("Invalid data");
+		}
+
+		if (compression == CompressionType.NONE)
+		{
+			byte[] data = new byte[compressedLength];
+			in.readFully(data);
+			return data;
+		}
+
+		int decompressedLength = in.readInt();
+		if (decompressedLength < 0)
+		{
+			throw new IOException("Invalid data");
+		}
+
+		InputStream compressed = ByteStreams.limit(in, compressedLength);
+		InputStream decompressed;
+		switch (compression)
+		{
+			case CompressionType.BZ2:
+				decompressed = new BZip2CompressorInputStream(new SequenceInputStream(new ByteArrayInputStream(BZIP_HEADER), compressed));
+				break;
+			case CompressionType.GZ:
+				decompressed = new GZIPInputStream(compressed);
+				break;
+			default:
+				throw new IOException("Unknown decompression type");
+		}
+
+		try (InputStream is = decompressed)
+		{
+			byte[] data = new byte[decompressedLength];
+			ByteStreams.readFully(is, data);
+			return data;
+		}
+	}
+}
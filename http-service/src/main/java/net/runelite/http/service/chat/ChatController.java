@@ -24,13 +24,12 @@
  */
 package net.runelite.http.service.chat;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.runelite.http.api.chat.Duels;
 import net.runelite.http.api.chat.LayoutRoom;
+import net.runelite.http.api.chat.PlayerStats;
 import net.runelite.http.api.chat.Task;
 import net.runelite.http.service.util.exception.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,6 +42,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/chat")
@@ -53,11 +53,6 @@ public class ChatController
 	private static final int MAX_LAYOUT_ROOMS = 16;
 	private static final int MAX_PETS = 256;
 
-	private final Cache<KillCountKey, Integer> killCountCache = CacheBuilder.newBuilder()
-		.expireAfterWrite(2, TimeUnit.MINUTES)
-		.maximumSize(128L)
-		.build();
-
 	@Autowired
 	private ChatService chatService;
 
@@ -70,22 +65,12 @@ public class ChatController
 		}
 
 		chatService.setKc(name, boss, kc);
-		killCountCache.put(new KillCountKey(name, boss), kc);
 	}
 
 	@GetMapping("/kc")
 	public int getKc(@RequestParam String name, @RequestParam String boss)
 	{
-		Integer kc = killCountCache.getIfPresent(new KillCountKey(name, boss));
-		if (kc == null)
-		{
-			kc = chatService.getKc(name, boss);
-			if (kc != null)
-			{
-				killCountCache.put(new KillCountKey(name, boss), kc);
-			}
-		}
-
+		Integer kc = chatService.getKc(name, boss);
 		if (kc == null)
 		{
 			throw new NotFoundException();
@@ -271,4 +256,21 @@ public class ChatController
 
 		return petList;
 	}
+
+	@GetMapping("/player")
+	public PlayerStats getPlayer(@RequestParam String name)
+	{
+		if (!chatService.isPlayerHash())
+		{
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "player stats are not enabled");
+		}
+
+		PlayerStats stats = chatService.getPlayer(name);
+		if (stats == null)
+		{
+			throw new NotFoundException();
+		}
+
+		return stats;
+	}
 }
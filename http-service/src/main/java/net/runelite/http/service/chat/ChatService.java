@@ -26,93 +26,496 @@ package net.runelite.http.service.chat;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.Duration;
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import net.runelite.http.api.chat.Duels;
+import net.runelite.http.api.RuneLiteAPI;
 import net.runelite.http.api.chat.LayoutRoom;
+import net.runelite.http.api.chat.PlayerStats;
 import net.runelite.http.api.chat.Task;
+import net.runelite.http.service.util.redis.HotKeyTracker;
 import net.runelite.http.service.util.redis.RedisPool;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 @Service
+@Slf4j
 public class ChatService
 {
 	private static final Duration EXPIRE = Duration.ofMinutes(2);
-
+	/**
+	 * Channel keys are published to when they are written, so other nodes drop them from their near-cache
+	 */
+	private static final String INVALIDATE_CHANNEL = "chat.invalidate";
+	private static final Gson GSON = RuneLiteAPI.GSON;
+	private static final int GENERATIONS = 1024;
+
+	/**
+	 * Keys are tagged with the player name, so in a cluster all of a player's keys are on one node
+	 */
 	private final RedisPool jedisPool;
+	/**
+	 * Store all of a player's stats as fields of a single player.<name> hash, instead of a key per stat
+	 */
+	private final boolean playerHash;
+
+	/**
+	 * Values by redis key. Values are shared between requests and must not be modified.
+	 */
+	private final Cache<String, CachedValue> cache;
+	/**
+	 * Incremented when a key is invalidated, by a stripe of the key. A lookup only caches its result
+	 * if no invalidation happened while it was in flight.
+	 */
+	private final AtomicLongArray generations = new AtomicLongArray(GENERATIONS);
+	/**
+	 * Hot keys which were recently found to not exist, so repeated lookups of them don't go to redis
+	 */
+	private final Cache<String, Boolean> missing;
+	private final HotKeyTracker hotKeyTracker;
+	private final String nodeId = UUID.randomUUID().toString();
+	private final Closeable subscription;
+
+	/**
+	 * Identical writes in quick succession, such as every member of a raid submitting the same
+	 * layout, are only written once
+	 */
+	private final ChatWriteFilter writeFilter;
+	private final MeterRegistry meterRegistry;
 
 	@Autowired
-	public ChatService(RedisPool jedisPool)
+	public ChatService(
+		RedisPool jedisPool,
+		@Value("${runelite.chat.cache.bytes:16777216}") long cacheBytes,
+		@Value("${runelite.chat.playerHash:false}") boolean playerHash,
+		@Value("${runelite.chat.dedup.size:65536}") int dedupSize,
+		@Value("${runelite.chat.dedup.seconds:10}") int dedupSeconds,
+		@Value("${runelite.chat.hot.seconds:5}") int hotSeconds,
+		MeterRegistry meterRegistry,
+		HotKeyTracker hotKeyTracker
+	)
 	{
+		this.hotKeyTracker = hotKeyTracker;
+		this.missing = CacheBuilder.newBuilder()
+			.expireAfterWrite(hotSeconds, TimeUnit.SECONDS)
+			.maximumSize(16384L)
+			.build();
 		this.jedisPool = jedisPool;
+		this.playerHash = playerHash;
+		this.writeFilter = new ChatWriteFilter(dedupSize, dedupSeconds);
+		this.meterRegistry = meterRegistry;
+		this.cache = CacheBuilder.newBuilder()
+			.expireAfterWrite(EXPIRE.getSeconds(), TimeUnit.SECONDS)
+			.maximumWeight(cacheBytes)
+			.weigher((String k, CachedValue v) -> 80 + k.length() * 2 + weigh(v.value))
+			.build();
+		this.subscription = jedisPool.subscribe(new JedisPubSub()
+		{
+			@Override
+			public void onMessage(String channel, String message)
+			{
+				int idx = message.indexOf(' ');
+				if (idx != -1 && !message.startsWith(nodeId))
+				{
+					String key = message.substring(idx + 1);
+					invalidate(key);
+					// a write of the value this node last wrote must not be skipped now redis holds another
+					writeFilter.clear(key);
+				}
+			}
+
+			@Override
+			public void onSubscribe(String channel, int subscribedChannels)
+			{
+				// writes may have been missed while not subscribed
+				for (int i = 0; i < GENERATIONS; ++i)
+				{
+					generations.incrementAndGet(i);
+				}
+				cache.invalidateAll();
+				missing.invalidateAll();
+				writeFilter.clear();
+			}
+		}, INVALIDATE_CHANNEL);
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException
+	{
+		subscription.close();
+	}
+
+	/**
+	 * Approximate size of a cached value in bytes
+	 */
+	private static int weigh(Object value)
+	{
+		if (value instanceof int[])
+		{
+			return 16 + ((int[]) value).length * 4;
+		}
+		if (value instanceof Object[])
+		{
+			return 16 + ((Object[]) value).length * 4;
+		}
+		if (value instanceof PlayerHash)
+		{
+			return ((PlayerHash) value).getWeight();
+		}
+		if (value instanceof Task)
+		{
+			Task task = (Task) value;
+			return 96 + (task.getTask().length() + task.getLocation().length()) * 2;
+		}
+		return 32;
+	}
+
+	/**
+	 * Look up a key, from the near-cache if possible. The key is read along with its ttl, and the
+	 * value is not cached for longer than the key has left to live.
+	 *
+	 * @param key
+	 * @param fetch queues the command to read the key
+	 * @param parse converts the value read to the value returned, may return null if it is empty
+	 * @return the value, or null if the key doesn't exist
+	 */
+	@SuppressWarnings("unchecked")
+	private <R, T> T get(String key, BiFunction<Pipeline, String, Response<R>> fetch, Function<R, T> parse)
+	{
+		CachedValue cached = cache.getIfPresent(key);
+		long now = System.currentTimeMillis();
+		if (cached != null && now < cached.expiresAt)
+		{
+			return (T) cached.value;
+		}
+		if (missing.getIfPresent(key) != null)
+		{
+			return null;
+		}
+
+		int count = hotKeyTracker.record(key);
+		long generation = generation(key);
+		Map.Entry<R, Long> read = jedisPool.execute(key, jedis ->
+		{
+			Pipeline pipeline = jedis.pipelined();
+			Response<R> value = fetch.apply(pipeline, key);
+			Response<Long> pttl = pipeline.pttl(key);
+			pipeline.sync();
+			return Maps.immutableEntry(value.get(), pttl.get());
+		});
+		R raw = read.getKey();
+		long ttl = read.getValue();
+
+		T value = raw == null ? null : parse.apply(raw);
+		if (value != null)
+		{
+			// ttl is negative if the key has no expiry, or expired since it was read
+			cache(key, generation, new CachedValue(value, now + (ttl >= 0 ? Math.min(ttl, EXPIRE.toMillis()) : EXPIRE.toMillis())));
+		}
+		else if (hotKeyTracker.isHot(count))
+		{
+			// values are always cached, but a hot key which doesn't exist would go to redis on every lookup
+			if (generation(key) == generation)
+			{
+				missing.put(key, Boolean.TRUE);
+				if (generation(key) != generation)
+				{
+					missing.invalidate(key);
+				}
+				else
+				{
+					meterRegistry.counter("runelite chat hot key promoted").increment();
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Cache a value, unless the key was invalidated since the given generation
+	 */
+	private void cache(String key, long generation, CachedValue value)
+	{
+		if (generation(key) != generation)
+		{
+			return;
+		}
+
+		cache.put(key, value);
+		// an invalidation between the check and the put would otherwise be lost
+		if (generation(key) != generation)
+		{
+			cache.invalidate(key);
+		}
+	}
+
+	private void invalidate(String key)
+	{
+		generations.incrementAndGet(stripe(key));
+		cache.invalidate(key);
+		missing.invalidate(key);
+	}
+
+	private long generation(String key)
+	{
+		return generations.get(stripe(key));
+	}
+
+	private static int stripe(String key)
+	{
+		return Math.floorMod(key.hashCode(), GENERATIONS);
+	}
+
+	/**
+	 * Write a key, and invalidate it in the near-cache of other nodes. The write is skipped if the same
+	 * data was recently written to the key.
+	 *
+	 * @param type the stat type, for metrics
+	 * @param key
+	 * @param data the data being written, to identify duplicate writes
+	 * @param value the new value to cache, or null to invalidate the cached value
+	 * @param writer
+	 */
+	private void set(String type, String key, String data, Object value, Consumer<Pipeline> writer)
+	{
+		set(type, key, null, data, value, writer);
+	}
+
+	/**
+	 * Write a key or a field of a key, and invalidate the key in the near-cache of other nodes. The
+	 * write is skipped if the same data was recently written to the key or field.
+	 */
+	private void set(String type, String key, @Nullable String field, String data, Object value, Consumer<Pipeline> writer)
+	{
+		long nowSeconds = System.currentTimeMillis() / 1000L;
+		if (writeFilter.isDuplicate(key, field, data, nowSeconds))
+		{
+			meterRegistry.counter("runelite chat write suppressed", "type", type).increment();
+			return;
+		}
+
+		meterRegistry.counter("runelite chat write", "type", type).increment();
+		hotKeyTracker.record(key);
+		jedisPool.execute(key, jedis ->
+		{
+			Pipeline pipeline = jedis.pipelined();
+			writer.accept(pipeline);
+			pipeline.publish(INVALIDATE_CHANNEL, nodeId + " " + key);
+			RedisPool.sync(pipeline);
+			return null;
+		});
+		// only recorded once redis has the value, so a failed write isn't suppressed on retry
+		writeFilter.record(key, field, data, nowSeconds);
+
+		// lookups which were in flight during the write don't cache what they read
+		invalidate(key);
+		if (value != null)
+		{
+			cache(key, generation(key), new CachedValue(value, System.currentTimeMillis() + EXPIRE.toMillis()));
+		}
+	}
+
+	private PlayerHash getPlayerHash(String name)
+	{
+		return get("player." + jedisPool.tag(name), Pipeline::hgetAll, map -> map.isEmpty() ? null : new PlayerHash(map));
+	}
+
+	private String getField(String name, String field)
+	{
+		PlayerHash hash = getPlayerHash(name);
+		return hash == null ? null : hash.get(field, System.currentTimeMillis(), EXPIRE.toMillis());
+	}
+
+	private void setField(String name, String field, String value)
+	{
+		String key = "player." + jedisPool.tag(name);
+		// the hash expires when none of its fields have been written for the ttl
+		int idx = field.indexOf('.');
+		String type = idx == -1 ? field : field.substring(0, idx);
+		set(type, key, field, value, null, pipeline ->
+		{
+			pipeline.hset(key, field, PlayerHash.encode(value, System.currentTimeMillis()));
+			pipeline.expire(key, (int) EXPIRE.getSeconds());
+		});
+	}
+
+	public boolean isPlayerHash()
+	{
+		return playerHash;
+	}
+
+	/**
+	 * Get all of the current stats of a player from the player hash
+	 *
+	 * @param name
+	 * @return the stats, or null if the player has none
+	 */
+	public PlayerStats getPlayer(String name)
+	{
+		PlayerHash hash = getPlayerHash(name);
+		if (hash == null)
+		{
+			return null;
+		}
+
+		final long now = System.currentTimeMillis();
+		PlayerStats stats = new PlayerStats();
+		boolean found = false;
+		for (String field : hash.fieldNames())
+		{
+			String value = hash.get(field, now, EXPIRE.toMillis());
+			if (value == null)
+			{
+				continue;
+			}
+
+			found = true;
+			if (field.startsWith("kc."))
+			{
+				stats.getKc().put(field.substring(3), Integer.parseInt(value));
+			}
+			else if (field.startsWith("pb."))
+			{
+				stats.getPb().put(field.substring(3), Double.parseDouble(value));
+			}
+			else
+			{
+				switch (field)
+				{
+					case "qp":
+						stats.setQp(Integer.parseInt(value));
+						break;
+					case "gc":
+						stats.setGc(Integer.parseInt(value));
+						break;
+					case "task":
+						stats.setTask(GSON.fromJson(value, Task.class));
+						break;
+					case "duels":
+						stats.setDuels(GSON.fromJson(value, Duels.class));
+						break;
+					case "layout":
+						stats.setLayout(parseLayout(value));
+						break;
+					case "pets":
+						stats.setPets(PetListCodec.decode(Base64.getDecoder().decode(value)));
+						break;
+				}
+			}
+		}
+		return found ? stats : null;
+	}
+
+	private static LayoutRoom[] parseLayout(String layout)
+	{
+		List<String> roomList = Splitter.on(' ').splitToList(layout);
+		return roomList.stream()
+			.map(LayoutRoom::valueOf)
+			.toArray(LayoutRoom[]::new);
 	}
 
 	public Integer getKc(String name, String boss)
 	{
-		String value;
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			value = jedis.get("kc." + name + "." + boss);
+			String value = getField(name, "kc." + boss);
+			return value == null ? null : Integer.parseInt(value);
 		}
-		return value == null ? null : Integer.parseInt(value);
+
+		return get("kc." + jedisPool.tag(name) + "." + boss, Pipeline::get, Integer::parseInt);
 	}
 
 	public void setKc(String name, String boss, int kc)
 	{
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			jedis.setex("kc." + name + "." + boss, (int) EXPIRE.getSeconds(), Integer.toString(kc));
+			setField(name, "kc." + boss, Integer.toString(kc));
+			return;
 		}
+
+		String key = "kc." + jedisPool.tag(name) + "." + boss;
+		set("kc", key, Integer.toString(kc), kc, pipeline -> pipeline.setex(key, (int) EXPIRE.getSeconds(), Integer.toString(kc)));
 	}
 
 	public Integer getQp(String name)
 	{
-		String value;
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			value = jedis.get("qp." + name);
+			String value = getField(name, "qp");
+			return value == null ? null : Integer.parseInt(value);
 		}
-		return value == null ? null : Integer.parseInt(value);
+
+		return get("qp." + jedisPool.tag(name), Pipeline::get, Integer::parseInt);
 	}
 
 	public void setQp(String name, int qp)
 	{
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			jedis.setex("qp." + name, (int) EXPIRE.getSeconds(), Integer.toString(qp));
+			setField(name, "qp", Integer.toString(qp));
+			return;
 		}
+
+		String key = "qp." + jedisPool.tag(name);
+		set("qp", key, Integer.toString(qp), qp, pipeline -> pipeline.setex(key, (int) EXPIRE.getSeconds(), Integer.toString(qp)));
 	}
 
 	public Task getTask(String name)
 	{
-		Map<String, String> map;
-
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			map = jedis.hgetAll("task." + name);
+			String value = getField(name, "task");
+			return value == null ? null : GSON.fromJson(value, Task.class);
 		}
 
-		if (map.isEmpty())
+		return get("task." + jedisPool.tag(name), Pipeline::hgetAll, map ->
 		{
-			return null;
-		}
-
-		Task task = new Task();
-		task.setTask(map.get("task"));
-		task.setAmount(Integer.parseInt(map.get("amount")));
-		task.setInitialAmount(Integer.parseInt(map.get("initialAmount")));
-		task.setLocation(map.get("location"));
-		return task;
+			if (map.isEmpty())
+			{
+				return null;
+			}
+
+			Task task = new Task();
+			task.setTask(map.get("task"));
+			task.setAmount(Integer.parseInt(map.get("amount")));
+			task.setInitialAmount(Integer.parseInt(map.get("initialAmount")));
+			task.setLocation(map.get("location"));
+			return task;
+		});
 	}
 
 	public void setTask(String name, Task task)
 	{
+		if (playerHash)
+		{
+			setField(name, "task", GSON.toJson(task));
+			return;
+		}
+
 		Map<String, String> taskMap = ImmutableMap.<String, String>builderWithExpectedSize(4)
 			.put("task", task.getTask())
 			.put("amount", Integer.toString(task.getAmount()))
@@ -120,75 +523,92 @@ public class ChatService
 			.put("location", task.getLocation())
 			.build();
 
-		String key = "task." + name;
-
-		try (Jedis jedis = jedisPool.getResource())
+		String key = "task." + jedisPool.tag(name);
+		set("task", key, taskMap.toString(), task, pipeline ->
 		{
-			jedis.hmset(key, taskMap);
-			jedis.expire(key, (int) EXPIRE.getSeconds());
-		}
+			pipeline.hmset(key, taskMap);
+			pipeline.expire(key, (int) EXPIRE.getSeconds());
+		});
 	}
 
 	public Double getPb(String name, String boss)
 	{
-		String value;
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			value = jedis.get("pb." + boss + "." + name);
+			String value = getField(name, "pb." + boss);
+			return value == null ? null : Double.parseDouble(value);
 		}
-		return value == null ? null : Double.parseDouble(value);
+
+		return get("pb." + boss + "." + jedisPool.tag(name), Pipeline::get, Double::parseDouble);
 	}
 
 	public void setPb(String name, String boss, double pb)
 	{
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			jedis.setex("pb." + boss + "." + name, (int) EXPIRE.getSeconds(), Double.toString(pb));
+			setField(name, "pb." + boss, Double.toString(pb));
+			return;
 		}
+
+		String key = "pb." + boss + "." + jedisPool.tag(name);
+		set("pb", key, Double.toString(pb), pb, pipeline -> pipeline.setex(key, (int) EXPIRE.getSeconds(), Double.toString(pb)));
 	}
 
 	public Integer getGc(String name)
 	{
-		String value;
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			value = jedis.get("gc." + name);
+			String value = getField(name, "gc");
+			return value == null ? null : Integer.parseInt(value);
 		}
-		return value == null ? null : Integer.parseInt(value);
+
+		return get("gc." + jedisPool.tag(name), Pipeline::get, Integer::parseInt);
 	}
 
 	public void setGc(String name, int gc)
 	{
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			jedis.setex("gc." + name, (int) EXPIRE.getSeconds(), Integer.toString(gc));
+			setField(name, "gc", Integer.toString(gc));
+			return;
 		}
+
+		String key = "gc." + jedisPool.tag(name);
+		set("gc", key, Integer.toString(gc), gc, pipeline -> pipeline.setex(key, (int) EXPIRE.getSeconds(), Integer.toString(gc)));
 	}
 
 	public Duels getDuels(String name)
 	{
-		Map<String, String> map;
-
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			map = jedis.hgetAll("duels." + name);
+			String value = getField(name, "duels");
+			return value == null ? null : GSON.fromJson(value, Duels.class);
 		}
 
-		if (map.isEmpty())
+		return get("duels." + jedisPool.tag(name), Pipeline::hgetAll, map ->
 		{
-			return null;
-		}
-
-		Duels duels = new Duels();
-		duels.setWins(Integer.parseInt(map.get("wins")));
-		duels.setLosses(Integer.parseInt(map.get("losses")));
-		duels.setWinningStreak(Integer.parseInt(map.get("winningStreak")));
-		duels.setLosingStreak(Integer.parseInt(map.get("losingStreak")));
-		return duels;
+			if (map.isEmpty())
+			{
+				return null;
+			}
+
+			Duels duels = new Duels();
+			duels.setWins(Integer.parseInt(map.get("wins")));
+			duels.setLosses(Integer.parseInt(map.get("losses")));
+			duels.setWinningStreak(Integer.parseInt(map.get("winningStreak")));
+			duels.setLosingStreak(Integer.parseInt(map.get("losingStreak")));
+			return duels;
+		});
 	}
 
 	public void setDuels(String name, Duels duels)
 	{
+		if (playerHash)
+		{
+			setField(name, "duels", GSON.toJson(duels));
+			return;
+		}
+
 		Map<String, String> duelsMap = ImmutableMap.<String, String>builderWithExpectedSize(4)
 			.put("wins", Integer.toString(duels.getWins()))
 			.put("losses", Integer.toString(duels.getLosses()))
@@ -196,68 +616,78 @@ public class ChatService
 			.put("losingStreak", Integer.toString(duels.getLosingStreak()))
 			.build();
 
-		String key = "duels." + name;
-
-		try (Jedis jedis = jedisPool.getResource())
+		String key = "duels." + jedisPool.tag(name);
+		set("duels", key, duelsMap.toString(), duels, pipeline ->
 		{
-			jedis.hmset(key, duelsMap);
-			jedis.expire(key, (int) EXPIRE.getSeconds());
-		}
+			pipeline.hmset(key, duelsMap);
+			pipeline.expire(key, (int) EXPIRE.getSeconds());
+		});
 	}
 
 	public LayoutRoom[] getLayout(String name)
 	{
-		String layout;
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			layout = jedis.get("layout." + name);
+			String value = getField(name, "layout");
+			return value == null ? null : parseLayout(value);
 		}
 
-		if (layout == null)
-		{
-			return null;
-		}
-
-		List<String> roomList = Splitter.on(' ').splitToList(layout);
-		return roomList.stream()
-			.map(LayoutRoom::valueOf)
-			.toArray(LayoutRoom[]::new);
+		return get("layout." + jedisPool.tag(name), Pipeline::get, ChatService::parseLayout);
 	}
 
 	public void setLayout(String name, LayoutRoom[] rooms)
 	{
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			jedis.setex("layout." + name, (int) EXPIRE.getSeconds(), Joiner.on(' ').join(rooms));
+			setField(name, "layout", Joiner.on(' ').join(rooms));
+			return;
 		}
+
+		String key = "layout." + jedisPool.tag(name);
+		String layout = Joiner.on(' ').join(rooms);
+		set("layout", key, layout, rooms.clone(), pipeline -> pipeline.setex(key, (int) EXPIRE.getSeconds(), layout));
 	}
 
 	public int[] getPetList(String name)
 	{
-		Set<String> pets;
-		try (Jedis jedis = jedisPool.getResource())
+		if (playerHash)
 		{
-			pets = jedis.smembers("pets." + name);
+			String value = getField(name, "pets");
+			return value == null ? null : PetListCodec.decode(Base64.getDecoder().decode(value));
 		}
 
-		if (pets.isEmpty())
+		return get("petlist." + jedisPool.tag(name), (pipeline, key) -> pipeline.get(key.getBytes(StandardCharsets.UTF_8)), PetListCodec::decode);
+	}
+
+	public void setPetList(String name, int[] petList)
+	{
+		int[] pets = PetListCodec.normalize(petList);
+		byte[] encoded = PetListCodec.encode(pets);
+		String data = Base64.getEncoder().encodeToString(encoded);
+
+		// the pet list replaces the previous list
+		if (playerHash)
 		{
-			return null;
+			setField(name, "pets", data);
+			return;
 		}
 
-		return pets.stream()
-			.mapToInt(Integer::parseInt)
-			.toArray();
+		String key = "petlist." + jedisPool.tag(name);
+		set("pets", key, data, pets, pipeline -> pipeline.setex(key.getBytes(StandardCharsets.UTF_8), (int) EXPIRE.getSeconds(), encoded));
 	}
 
-	public void setPetList(String name, int[] petList)
+	private static class CachedValue
 	{
-		String[] pets = Arrays.stream(petList).mapToObj(Integer::toString).toArray(String[]::new);
-		String key = "pets." + name;
-		try (Jedis jedis = jedisPool.getResource())
+		final Object value;
+		/**
+		 * When the key expires in redis, or would have if it has no expiry
+		 */
+		final long expiresAt;
+
+		CachedValue(Object value, long expiresAt)
 		{
-			jedis.sadd(key, pets);
-			jedis.expire(key, (int) EXPIRE.getSeconds());
+			this.value = value;
+			this.expiresAt = expiresAt;
 		}
 	}
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+
+/**
+ * Remembers fingerprints of the values recently written to keys, so that identical writes within
+ * a short window can be skipped. Each key maps to a group of slots, and each field of a key to one
+ * slot of its group, which packs a 40 bit fingerprint of the last value written to it with the low
+ * 24 bits of the time it was written, in seconds. Writing a different value replaces the slot, so a
+ * key changed back to an earlier value is always written. Colliding keys or fields evict each other,
+ * which only causes a write to not be suppressed.
+ */
+class ChatWriteFilter
+{
+	private static final HashFunction HASH = Hashing.murmur3_128();
+	private static final long TIME_MASK = (1L << 24) - 1;
+	/**
+	 * Slots per key. The fields of a key are spread over its slots, so they can all be cleared
+	 * without knowing which fields the key has.
+	 */
+	private static final int FIELD_SLOTS = 8;
+
+	private final AtomicLongArray slots;
+	private final int mask;
+	private final long windowSeconds;
+
+	/**
+	 * @param size number of slots, rounded up to a power of 2
+	 * @param windowSeconds how long a write suppresses identical writes for
+	 */
+	ChatWriteFilter(int size, long windowSeconds)
+	{
+		int slotCount = Integer.highestOneBit(Math.max(size - 1, FIELD_SLOTS)) << 1;
+		this.slots = new AtomicLongArray(slotCount);
+		this.mask = slotCount - 1;
+		this.windowSeconds = windowSeconds;
+	}
+
+	boolean isDuplicate(String key, String value, long nowSeconds)
+	{
+		return isDuplicate(key, null, value, nowSeconds);
+	}
+
+	/**
+	 * Check if a write of a value to a key, or a field of a key, can be skipped
+	 *
+	 * @param key
+	 * @param field the field of the key, or null if the value is the whole key
+	 * @param value
+	 * @param nowSeconds
+	 * @return true if the same value was the last written to the key, within the window
+	 */
+	boolean isDuplicate(String key, @Nullable String field, String value, long nowSeconds)
+	{
+		long now = nowSeconds & TIME_MASK;
+		long existing = slots.get(slot(key, field));
+		return existing != 0L && (existing & ~TIME_MASK) == fingerprint(key, field, value)
+			&& ((now - (existing & TIME_MASK)) & TIME_MASK) < windowSeconds;
+	}
+
+	void record(String key, String value, long nowSeconds)
+	{
+		record(key, null, value, nowSeconds);
+	}
+
+	/**
+	 * Record a completed write of a value to a key, or a field of a key
+	 *
+	 * @param key
+	 * @param field the field of the key, or null if the value is the whole key
+	 * @param value
+	 * @param nowSeconds
+	 */
+	void record(String key, @Nullable String field, String value, long nowSeconds)
+	{
+		slots.set(slot(key, field), fingerprint(key, field, value) | (nowSeconds & TIME_MASK));
+	}
+
+	/**
+	 * Forget the writes to a key and all of its fields, after it was written elsewhere
+	 *
+	 * @param key
+	 */
+	void clear(String key)
+	{
+		int group = group(key);
+		for (int i = 0; i < FIELD_SLOTS; ++i)
+		{
+			slots.set(group + i, 0L);
+		}
+	}
+
+	/**
+	 * Forget all writes
+	 */
+	void clear()
+	{
+		for (int i = 0; i < slots.length(); ++i)
+		{
+			slots.set(i, 0L);
+		}
+	}
+
+	private int group(String key)
+	{
+		return HASH.hashString(key, StandardCharsets.UTF_8).asInt() & mask & ~(FIELD_SLOTS - 1);
+	}
+
+	private int slot(String key, @Nullable String field)
+	{
+		int group = group(key);
+		return field == null ? group : group + (HASH.hashString(field, StandardCharsets.UTF_8).asInt() & (FIELD_SLOTS - 1));
+	}
+
+	private static long fingerprint(String key, @Nullable String field, String value)
+	{
+		// the key and field are included so keys colliding on a slot don't match each other's values
+		return HASH.newHasher()
+			.putString(key, StandardCharsets.UTF_8)
+			.putByte((byte) 0)
+			.putString(field != null ? field : "", StandardCharsets.UTF_8)
+			.putByte((byte) 0)
+			.putString(value, StandardCharsets.UTF_8)
+			.hash()
+			.asLong() & ~TIME_MASK;
+	}
+}
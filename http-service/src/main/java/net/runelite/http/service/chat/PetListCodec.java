@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import java.util.Arrays;
+
+/**
+ * Encodes pet lists as the varint deltas of the sorted, distinct pet ids
+ */
+class PetListCodec
+{
+	/**
+	 * Sort and remove duplicates from a pet list
+	 *
+	 * @param pets
+	 * @return a new array
+	 */
+	static int[] normalize(int[] pets)
+	{
+		return Arrays.stream(pets)
+			.sorted()
+			.distinct()
+			.toArray();
+	}
+
+	/**
+	 * @param pets normalized pet list
+	 * @return
+	 */
+	static byte[] encode(int[] pets)
+	{
+		// deltas of 32 bit ids are at most 5 bytes each
+		byte[] out = new byte[pets.length * 5];
+		int pos = 0;
+		int prev = 0;
+		for (int pet : pets)
+		{
+			int delta = pet - prev;
+			prev = pet;
+			while ((delta & ~0x7f) != 0)
+			{
+				out[pos++] = (byte) ((delta & 0x7f) | 0x80);
+				delta >>>= 7;
+			}
+			out[pos++] = (byte) delta;
+		}
+		return Arrays.copyOf(out, pos);
+	}
+
+	static int[] decode(byte[] data)
+	{
+		// each id ends on a byte without the continuation bit
+		int count = 0;
+		for (byte b : data)
+		{
+			if (b >= 0)
+			{
+				++count;
+			}
+		}
+
+		int[] pets = new int[count];
+		int idx = 0;
+		int prev = 0;
+		int delta = 0;
+		int shift = 0;
+		for (byte b : data)
+		{
+			delta |= (b & 0x7f) << shift;
+			if (b < 0)
+			{
+				shift += 7;
+				continue;
+			}
+
+			prev += delta;
+			pets[idx++] = prev;
+			delta = 0;
+			shift = 0;
+		}
+		return pets;
+	}
+}
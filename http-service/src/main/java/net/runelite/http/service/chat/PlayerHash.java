@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import java.util.Map;
+
+/**
+ * The fields of a player's stats hash. Each field value is prefixed with the time it was
+ * written, so fields expire individually even though the hash shares one ttl.
+ */
+class PlayerHash
+{
+	private final Map<String, String> fields;
+	private final int weight;
+
+	PlayerHash(Map<String, String> fields)
+	{
+		this.fields = fields;
+
+		int w = 0;
+		for (Map.Entry<String, String> entry : fields.entrySet())
+		{
+			w += 32 + (entry.getKey().length() + entry.getValue().length()) * 2;
+		}
+		this.weight = w;
+	}
+
+	static String encode(String value, long now)
+	{
+		return now + ":" + value;
+	}
+
+	/**
+	 * Get a field if it was written less than {@code ttl} ago
+	 *
+	 * @param field
+	 * @param now
+	 * @param ttl
+	 * @return
+	 */
+	String get(String field, long now, long ttl)
+	{
+		String value = fields.get(field);
+		if (value == null)
+		{
+			return null;
+		}
+
+		int idx = value.indexOf(':');
+		if (idx == -1 || Long.parseLong(value.substring(0, idx)) + ttl <= now)
+		{
+			return null;
+		}
+		return value.substring(idx + 1);
+	}
+
+	Iterable<String> fieldNames()
+	{
+		return fields.keySet();
+	}
+
+	boolean isEmpty()
+	{
+		return fields.isEmpty();
+	}
+
+	int getWeight()
+	{
+		return weight;
+	}
+}
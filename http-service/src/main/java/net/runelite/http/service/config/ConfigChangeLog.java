@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import com.mongodb.client.MongoCollection;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.PushOptions;
+import com.mongodb.client.model.UpdateOptions;
+import static com.mongodb.client.model.Updates.pushEach;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.runelite.http.api.config.ConfigPatch;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * A capped per-profile log of the keys changed in each rev, used to bring clients which are
+ * a few revs behind up to date without a full fetch.
+ */
+class ConfigChangeLog
+{
+	// number of revs kept per profile
+	private static final int MAX_CHANGES = 32;
+	// patches larger than this are not logged, clients which are behind them do a full fetch instead
+	private static final int MAX_CHANGE_SIZE = 65536;
+
+	private final MongoCollection<Document> mongoCollection;
+	private final UpdateOptions upsertUpdateOptions = new UpdateOptions().upsert(true);
+	private final PushOptions pushOptions = new PushOptions()
+		.sortDocument(new Document("rev", 1))
+		.slice(-MAX_CHANGES);
+
+	ConfigChangeLog(MongoCollection<Document> mongoCollection)
+	{
+		this.mongoCollection = mongoCollection;
+
+		IndexOptions indexOptions = new IndexOptions().unique(true);
+		mongoCollection.createIndex(Indexes.ascending("_userId", "_profileId"), indexOptions);
+	}
+
+	void append(int userId, long profileId, long rev, Map<String, String> edits, Collection<String> unsets)
+	{
+		int size = 0;
+		List<Document> edit = new ArrayList<>(edits.size());
+		for (Map.Entry<String, String> entry : edits.entrySet())
+		{
+			size += entry.getKey().length() + entry.getValue().length();
+			edit.add(new Document("k", entry.getKey()).append("v", entry.getValue()));
+		}
+		for (String key : unsets)
+		{
+			size += key.length();
+		}
+
+		if (size > MAX_CHANGE_SIZE)
+		{
+			// this leaves a gap in the log, which is detected when reading it
+			return;
+		}
+
+		Document change = new Document("rev", rev)
+			.append("edit", edit)
+			.append("unset", new ArrayList<>(unsets));
+
+		// concurrent patches may append out of order, so keep the log sorted by rev
+		mongoCollection.updateOne(
+			logFilter(userId, profileId),
+			pushEach("changes", Collections.singletonList(change), pushOptions),
+			upsertUpdateOptions
+		);
+	}
+
+	/**
+	 * Compute the changes made after rev since, up to and including rev
+	 *
+	 * @param userId
+	 * @param profileId
+	 * @param since
+	 * @param rev
+	 * @return the changes, or null if the log does not cover every rev in that range
+	 */
+	@Nullable
+	ConfigPatch changesSince(int userId, long profileId, long since, long rev)
+	{
+		Document log = mongoCollection.find(logFilter(userId, profileId)).first();
+		if (log == null)
+		{
+			return null;
+		}
+
+		ConfigPatch patch = new ConfigPatch();
+		long expected = since + 1;
+		for (Document change : (List<Document>) log.get("changes"))
+		{
+			long changeRev = change.getLong("rev");
+			if (changeRev <= since)
+			{
+				continue;
+			}
+			if (changeRev > rev)
+			{
+				break;
+			}
+			if (changeRev != expected)
+			{
+				// revs which were not logged, eg. from v2 patches or oversized patches
+				return null;
+			}
+
+			for (Document edit : (List<Document>) change.get("edit"))
+			{
+				String key = edit.getString("k");
+				patch.getEdit().put(key, edit.getString("v"));
+				patch.getUnset().remove(key);
+			}
+			for (String key : (List<String>) change.get("unset"))
+			{
+				patch.getEdit().remove(key);
+				patch.getUnset().add(key);
+			}
+			++expected;
+		}
+
+		return expected == rev + 1 ? patch : null;
+	}
+
+	void delete(int userId, long profileId)
+	{
+		mongoCollection.deleteOne(logFilter(userId, profileId));
+	}
+
+	private static Bson logFilter(int userId, long profileId)
+	{
+		return and(
+			eq("_userId", userId),
+			eq("_profileId", profileId)
+		);
+	}
+}
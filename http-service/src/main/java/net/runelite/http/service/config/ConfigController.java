@@ -25,18 +25,21 @@
 package net.runelite.http.service.config;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import net.runelite.http.api.config.ConfigChanges;
 import net.runelite.http.api.config.ConfigPatch;
 import net.runelite.http.api.config.ConfigPatchResult;
 import net.runelite.http.api.config.Profile;
-import net.runelite.http.api.config.Configuration;
 import net.runelite.http.service.account.AuthFilter;
 import net.runelite.http.service.account.beans.SessionEntry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
@@ -44,7 +47,9 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 @RestController
@@ -110,7 +115,57 @@ public class ConfigController
 	}
 
 	@GetMapping("/v3/{profileId}")
-	public Configuration get3(HttpServletRequest request, HttpServletResponse response, @PathVariable long profileId) throws IOException
+	public void get3(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		WebRequest webRequest,
+		@PathVariable long profileId,
+		@RequestParam(required = false) List<String> groups
+	) throws IOException
+	{
+		SessionEntry session = authFilter.handle(request, response);
+		if (session == null)
+		{
+			return;
+		}
+
+		// clients send the rev they last synced, if it is still current only the rev needs to be read
+		if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null)
+		{
+			Long rev = configService.getRevV3(session.getUser(), profileId);
+			if (rev != null && webRequest.checkNotModified(Long.toString(rev)))
+			{
+				return;
+			}
+		}
+
+		// written directly to the response so large profiles are not copied into an intermediate map
+		ConfigurationBody body;
+		if (groups == null || groups.isEmpty())
+		{
+			body = configService.getV3Body(session.getUser(), profileId);
+		}
+		else
+		{
+			// only the requested groups are read and sent
+			body = configService.getV3Body(session.getUser(), profileId, groups);
+		}
+		if (body.getRev() != -1L)
+		{
+			response.setHeader(HttpHeaders.ETAG, "\"" + body.getRev() + "\"");
+		}
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		body.writeTo(response.getWriter());
+	}
+
+	@GetMapping("/v3/{profileId}/changes")
+	public ConfigChanges changes3(
+		HttpServletRequest request,
+		HttpServletResponse response,
+		@PathVariable long profileId,
+		@RequestParam long since
+	) throws IOException
 	{
 		SessionEntry session = authFilter.handle(request, response);
 		if (session == null)
@@ -118,7 +173,7 @@ public class ConfigController
 			return null;
 		}
 
-		return configService.getV3(session.getUser(), profileId);
+		return configService.getChangesV3(session.getUser(), profileId, since);
 	}
 
 	@PatchMapping("/v3/{profileId}")
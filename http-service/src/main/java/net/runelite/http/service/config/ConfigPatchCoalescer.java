@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.http.api.config.ConfigPatch;
+
+/**
+ * Buffers validated patches per profile for a short window and writes them as a single update.
+ * Every caller whose patch was merged into a write is given the rev of that write.
+ */
+@Slf4j
+class ConfigPatchCoalescer
+{
+	private final BiFunction<ConfigKey, ConfigPatch, Long> writer;
+	private final long delayMs;
+	private final ScheduledExecutorService executor;
+	private final Map<ConfigKey, PendingPatch> pending = new ConcurrentHashMap<>();
+	private volatile boolean shutdown;
+
+	ConfigPatchCoalescer(BiFunction<ConfigKey, ConfigPatch, Long> writer, long delayMs, int threads)
+	{
+		this.writer = writer;
+		this.delayMs = delayMs;
+		this.executor = Executors.newScheduledThreadPool(threads,
+			new ThreadFactoryBuilder()
+				.setNameFormat("config-coalesce-%d")
+				.setDaemon(true)
+				.build()
+		);
+	}
+
+	/**
+	 * Write a validated patch, merged with any other patches for the same profile within the window
+	 *
+	 * @param key
+	 * @param patch
+	 * @return the new rev of the profile
+	 */
+	Long write(ConfigKey key, ConfigPatch patch)
+	{
+		if (shutdown)
+		{
+			return writer.apply(key, patch);
+		}
+
+		PendingPatch p = pending.compute(key, (k, existing) ->
+		{
+			if (existing == null)
+			{
+				existing = new PendingPatch();
+				try
+				{
+					executor.schedule(() -> flush(k), delayMs, TimeUnit.MILLISECONDS);
+				}
+				catch (RejectedExecutionException ex)
+				{
+					// shutting down, the patch is flushed below
+				}
+			}
+			existing.merge(patch);
+			return existing;
+		});
+
+		if (shutdown)
+		{
+			// shutdown may have already flushed the pending patches, or its flush task may have
+			// been rejected or cancelled, so flush here. Only one of the two flushes writes it.
+			flush(key);
+		}
+
+		try
+		{
+			return p.future.join();
+		}
+		catch (CompletionException ex)
+		{
+			if (ex.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	private void flush(ConfigKey key)
+	{
+		PendingPatch p = pending.remove(key);
+		if (p == null)
+		{
+			return;
+		}
+
+		try
+		{
+			p.future.complete(writer.apply(key, p.patch));
+		}
+		catch (RuntimeException ex)
+		{
+			log.warn("error writing coalesced patch for profile {}", key, ex);
+			p.future.completeExceptionally(ex);
+		}
+	}
+
+	void shutdown()
+	{
+		shutdown = true;
+		executor.shutdownNow();
+
+		// write anything which was still waiting for its window
+		for (ConfigKey key : pending.keySet())
+		{
+			flush(key);
+		}
+	}
+
+	private static class PendingPatch
+	{
+		final ConfigPatch patch = new ConfigPatch();
+		final CompletableFuture<Long> future = new CompletableFuture<>();
+
+		// later patches replace earlier ones key by key
+		void merge(ConfigPatch other)
+		{
+			for (Map.Entry<String, String> entry : other.getEdit().entrySet())
+			{
+				patch.getUnset().remove(entry.getKey());
+				patch.getEdit().put(entry.getKey(), entry.getValue());
+			}
+			for (String key : other.getUnset())
+			{
+				patch.getEdit().remove(key);
+				patch.getUnset().add(key);
+			}
+			if (other.getProfileName() != null)
+			{
+				patch.setProfileName(other.getProfileName());
+			}
+		}
+	}
+}
@@ -25,54 +25,86 @@
 package net.runelite.http.service.config;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
+import com.google.common.base.Utf8;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.ErrorCategory;
 import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
-import static com.mongodb.client.model.Filters.not;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.gt;
 import static com.mongodb.client.model.Filters.or;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
+import static com.mongodb.client.model.Projections.exclude;
 import static com.mongodb.client.model.Projections.fields;
 import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
 import static com.mongodb.client.model.Updates.combine;
 import static com.mongodb.client.model.Updates.inc;
 import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.setOnInsert;
 import static com.mongodb.client.model.Updates.unset;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
-import javax.annotation.Nonnull;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import net.runelite.http.api.RuneLiteAPI;
+import net.runelite.http.api.config.ConfigChanges;
 import net.runelite.http.api.config.ConfigPatch;
 import net.runelite.http.api.config.ConfigPatchResult;
 import net.runelite.http.api.config.Profile;
 import net.runelite.http.api.config.Configuration;
+import net.runelite.http.service.util.redis.RedisPool;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
 
 @Service
 @Slf4j
 public class ConfigService
 {
 	private static final int MAX_VALUE_LENGTH = 262144;
+	// profiles larger than this are cached raw and streamed to the client instead of being unpacked
+	private static final int STREAM_THRESHOLD = 131072;
 
 	private static final long PROFILE_ID_DEFAULT = 0L;
 	private static final long PROFILE_ID_RSPROFILE = -1L;
@@ -80,25 +112,135 @@ public class ConfigService
 	private static final Profile DEFAULT_PROFILE = new Profile(PROFILE_ID_DEFAULT, "default", 0L);
 	private static final Profile RS_PROFILE = new Profile(PROFILE_ID_RSPROFILE, "$rsprofile", 0L);
 	private static final Bson INCREMENT_REV = inc("_profile.rev", 1L);
+	private static final int MIGRATION_BATCH_SIZE = 500;
+	private static final String MIGRATION_V2 = "v2";
+	// held by the node running the background migration
+	private static final String MIGRATION_LOCK = "config.migration.lock";
+	/**
+	 * Set on a user's default profile once they have no v2 profile left
+	 */
+	private static final String MIGRATED_FIELD = "_profile.migrated";
+	// encoded size of a string element, excluding the key and value: type, key terminator, length, value terminator
+	private static final int ENTRY_OVERHEAD = 7;
+	// patches racing other writes to the same profile are retried this many times before giving up on its size
+	private static final int MAX_PATCH_ATTEMPTS = 3;
+	/**
+	 * Channel profiles are published to when they are written, so other nodes drop them from their cache
+	 */
+	private static final String INVALIDATE_CHANNEL = "config.invalidate";
+	// number of stripes of the invalidation generations
+	private static final int GENERATIONS = 1024;
 
-	private final Gson GSON = RuneLiteAPI.GSON;
+	private final UpdateOptions updateOptions = new UpdateOptions();
 	private final UpdateOptions upsertUpdateOptions = new UpdateOptions().upsert(true);
 	private final FindOneAndUpdateOptions upsertFindAndUpdateOptions = new FindOneAndUpdateOptions()
 		.upsert(true)
 		.returnDocument(ReturnDocument.AFTER)
-		.projection(fields(include("_profile.rev")));
+		.projection(include("_profile.rev"));
+	private final BulkWriteOptions orderedBulkWriteOptions = new BulkWriteOptions().ordered(true);
 
 	private final MongoCollection<Document> mongoCollection;
+	private final MongoCollection<RawBsonDocument> rawCollection;
+	private final ConfigChangeLog changeLog;
+	@Nullable
+	private final ConfigPatchCoalescer coalescer;
+	private final MongoCollection<Document> migrationCollection;
+
+	/**
+	 * Users known to have no v2 profile, from their default profile's migrated marker or a v2 write
+	 * which found none. Only consulted until the background migration has finished.
+	 */
+	private final Cache<Integer, Boolean> migratedUsers = CacheBuilder.newBuilder()
+		.maximumSize(262144)
+		.build();
+	/**
+	 * Users seen with a v2 profile by a request, who are migrated ahead of the background pass
+	 */
+	private final Set<Integer> pendingMigrations = ConcurrentHashMap.newKeySet();
+	private volatile boolean migrationComplete;
+
+	/**
+	 * Unpacked configurations. Entries are dropped when the profile is written on any node.
+	 */
+	private final Cache<ConfigKey, CachedConfiguration> configCache;
+	/**
+	 * Incremented when a profile is invalidated, by a stripe of the profile key. A fetch only caches
+	 * its result if no invalidation happened while it was in flight.
+	 */
+	private final AtomicLongArray generations = new AtomicLongArray(GENERATIONS);
+	private final RedisPool redisPool;
+	private final String nodeId = UUID.randomUUID().toString();
+	private final Closeable subscription;
+
+	/**
+	 * Last known encoded size of profiles, used to stop profiles growing past maxProfileBytes
+	 */
+	private final Cache<ConfigKey, Long> profileSizes = CacheBuilder.newBuilder()
+		.maximumSize(262144)
+		.build();
+	private final long maxProfileBytes;
+	private final DistributionSummary profileSizeDistribution;
+	private final Counter rejectedPatches;
 
 	@Autowired
 	public ConfigService(
 		MongoClient mongoClient,
-		@Value("${mongo.database}") String databaseName
+		@Value("${mongo.database}") String databaseName,
+		@Value("${runelite.config.cache.bytes:33554432}") long cacheBytes,
+		@Value("${runelite.config.cache.seconds:600}") int cacheSeconds,
+		@Value("${runelite.config.coalesce.ms:0}") long coalesceMs,
+		@Value("${runelite.config.coalesce.threads:4}") int coalesceThreads,
+		@Value("${runelite.config.max.bytes:8388608}") long maxProfileBytes,
+		MeterRegistry meterRegistry,
+		RedisPool redisPool
 	)
 	{
+		this.redisPool = redisPool;
+		this.maxProfileBytes = maxProfileBytes;
+		profileSizeDistribution = DistributionSummary
+			.builder("runelite config profile size")
+			.minimumExpectedValue(1024d)
+			.maximumExpectedValue(16777216d)
+			.publishPercentileHistogram(true)
+			.baseUnit("bytes")
+			.register(meterRegistry);
+		rejectedPatches = meterRegistry.counter("runelite config patch rejected");
+
+		// patches to a profile within coalesceMs of each other are written together
+		coalescer = coalesceMs > 0 ? new ConfigPatchCoalescer(this::writePatch, coalesceMs, coalesceThreads) : null;
+
+		// the expiry bounds how long an entry can be stale if an invalidation is lost
+		configCache = CacheBuilder.newBuilder()
+			.expireAfterWrite(cacheSeconds, TimeUnit.SECONDS)
+			.maximumWeight(cacheBytes)
+			.weigher((ConfigKey k, CachedConfiguration v) -> v.weight)
+			.build();
+		subscription = redisPool.subscribe(new JedisPubSub()
+		{
+			@Override
+			public void onMessage(String channel, String message)
+			{
+				String[] parts = message.split(" ");
+				if (parts.length == 3 && !parts[0].equals(nodeId))
+				{
+					invalidateLocal(new ConfigKey(Integer.parseInt(parts[1]), Long.parseLong(parts[2])));
+				}
+			}
+
+			@Override
+			public void onSubscribe(String channel, int subscribedChannels)
+			{
+				// writes may have been missed while not subscribed
+				invalidateAllLocal();
+			}
+		}, INVALIDATE_CHANNEL);
 
 		MongoDatabase database = mongoClient.getDatabase(databaseName);
 		this.mongoCollection = database.getCollection("config");
+		this.rawCollection = mongoCollection.withDocumentClass(RawBsonDocument.class);
+		this.changeLog = new ConfigChangeLog(database.getCollection("config_changes"));
+		this.migrationCollection = database.getCollection("config_migration");
+		this.migrationComplete = migrationCollection.find(and(eq("_id", MIGRATION_V2), eq("complete", true))).first() != null;
 
 		// Create unique index on (_userId, _profile._id)
 		dropIndexV2();
@@ -127,6 +269,10 @@ public class ConfigService
 						profile.getString("name"),
 						profile.getLong("rev")
 					));
+					if (Boolean.TRUE.equals(profile.getBoolean("migrated")))
+					{
+						migratedUsers.put(userId, Boolean.TRUE);
+					}
 				}
 				else
 				{
@@ -137,184 +283,505 @@ public class ConfigService
 
 		if (needMigration)
 		{
-			Document old = mongoCollection.find(and(eq("_userId", userId), eq("_profile", null))).first();
-			if (old == null)
-			{
-				log.warn("unable to find null profile for user {} to migrate", userId);
-				return profiles;
-			}
+			// the background migration has not reached this user yet. Their profiles are served from the
+			// v2 profile until it has, which is brought forward rather than done as part of this request.
+			pendingMigrations.add(userId);
+			profiles.add(DEFAULT_PROFILE);
+			profiles.add(RS_PROFILE);
+		}
 
-			List<Bson> sets = new ArrayList<>();
-			List<Bson> unsets = new ArrayList<>();
+		return profiles;
+	}
 
-			int migrated = 0;
-			for (Map.Entry<String, Object> entry : old.entrySet())
+	/**
+	 * Migrate a user's v2 profile to the v3 default and $rsprofile profiles
+	 *
+	 * @param userId
+	 * @return true if the user had a v2 profile
+	 */
+	private boolean migrateUser(int userId)
+	{
+		Document old = mongoCollection.find(legacyFilter(userId)).first();
+		if (old == null)
+		{
+			// already migrated, or never had a v2 profile
+			mongoCollection.updateOne(profileFilter(userId, PROFILE_ID_DEFAULT), set(MIGRATED_FIELD, true));
+			migratedUsers.put(userId, Boolean.TRUE);
+			return false;
+		}
+
+		// a v3 write can create the default profile before the user is migrated, its entries are newer
+		Document current = mongoCollection.find(profileFilter(userId, PROFILE_ID_DEFAULT)).first();
+
+		List<Bson> sets = new ArrayList<>();
+		List<Bson> unsets = new ArrayList<>();
+		List<Bson> defaultSets = new ArrayList<>();
+
+		int migrated = 0;
+		for (Map.Entry<String, Object> entry : old.entrySet())
+		{
+			String group = entry.getKey();
+			if (entry.getValue() instanceof Document)
 			{
-				String group = entry.getKey();
-				if (entry.getValue() instanceof Document)
+				Document valued = (Document) entry.getValue();
+				Object currentGroup = current != null ? current.get(group) : null;
+				for (Map.Entry<String, Object> entry2 : valued.entrySet())
 				{
-					Document valued = (Document) entry.getValue();
-					for (Map.Entry<String, Object> entry2 : valued.entrySet())
+					String key = entry2.getKey();
+					if (key.startsWith("rsprofile:"))
 					{
-						String key = entry2.getKey();
-						if (key.startsWith("rsprofile:"))
-						{
-							sets.add(set(group + "." + key, valued.get(key)));
-							unsets.add(unset(group + "." + key));
-							++migrated;
-						}
+						sets.add(set(group + "." + key, entry2.getValue()));
+						unsets.add(unset(group + "." + key));
+						++migrated;
+					}
+					else if (current != null && !(currentGroup instanceof Document && ((Document) currentGroup).containsKey(key)))
+					{
+						defaultSets.add(set(group + "." + key, entry2.getValue()));
 					}
 				}
 			}
+		}
 
-			log.info("Migrating v2 profile for user ({}) to v3: {} keys", userId, migrated);
-
-			mongoCollection.updateOne(
-				profileFilter(userId, PROFILE_ID_RSPROFILE),
-				combine(
-					set("_profile.id", RS_PROFILE.getId()),
-					set("_profile.name", RS_PROFILE.getName()),
-					set("_profile.rev", RS_PROFILE.getRev()),
-					combine(sets)
-				),
-				upsertUpdateOptions
-			);
+		log.info("Migrating v2 profile for user ({}) to v3: {} keys", userId, migrated);
 
-			mongoCollection.updateOne(
-				profileFilter(userId, null),
+		// Another node may be migrating the same user, in which case both write the same values. The
+		// v2 profile is only converted while it is still a v2 profile.
+		List<WriteModel<Document>> writes = new ArrayList<>(3);
+		writes.add(new UpdateOneModel<>(
+			profileFilter(userId, PROFILE_ID_RSPROFILE),
+			combine(
+				setOnInsert("_profile.id", RS_PROFILE.getId()),
+				setOnInsert("_profile.name", RS_PROFILE.getName()),
+				setOnInsert("_profile.rev", RS_PROFILE.getRev()),
+				combine(sets)
+			),
+			upsertUpdateOptions
+		));
+		if (current == null)
+		{
+			writes.add(new UpdateOneModel<>(
+				and(eq("_id", old.get("_id")), eq("_profile", null)),
 				combine(
 					set("_profile.id", DEFAULT_PROFILE.getId()),
 					set("_profile.name", DEFAULT_PROFILE.getName()),
 					set("_profile.rev", DEFAULT_PROFILE.getRev()),
+					set(MIGRATED_FIELD, true),
 					combine(unsets)
-				),
-				upsertUpdateOptions
-			);
-
-			profiles.add(DEFAULT_PROFILE);
-			profiles.add(RS_PROFILE);
+				)
+			));
+		}
+		else
+		{
+			// the default profile can't take the v2 profile's place, so the entries it doesn't have are
+			// copied into it instead
+			defaultSets.add(set(MIGRATED_FIELD, true));
+			defaultSets.add(INCREMENT_REV);
+			writes.add(new UpdateOneModel<>(profileFilter(userId, PROFILE_ID_DEFAULT), combine(defaultSets)));
+			writes.add(new DeleteOneModel<>(and(eq("_id", old.get("_id")), eq("_profile", null))));
 		}
+		mongoCollection.bulkWrite(writes, orderedBulkWriteOptions);
 
-		return profiles;
+		invalidate(userId, PROFILE_ID_DEFAULT);
+		invalidate(userId, PROFILE_ID_RSPROFILE);
+		migratedUsers.put(userId, Boolean.TRUE);
+		return true;
 	}
 
-	private Document getAggregateConfigV2(int userId)
+	/**
+	 * Migrate the users requests have found to still have a v2 profile. Every node migrates the users
+	 * it has seen, since they are likely to be making requests.
+	 */
+	@Scheduled(fixedDelayString = "${runelite.config.migration.queue.ms:1000}")
+	public void migrateQueued()
 	{
-		// this is potentially prone to collision problems if the db still contains both a _profile = null and _profile = non-null simultaneously
-		// mongo does not provide any ordering capabilities on undefined fields, so we can't do null-first or anything similar
-		// it shouldn't happen regardless since v3/list with a _profile = null will convert to _profile = 0
-		Bson v2AggregateFilter = and(
-			eq("_userId", userId),
-			or(
-				eq("_profile.id", PROFILE_ID_DEFAULT),
-				eq("_profile.id", PROFILE_ID_RSPROFILE),
-				eq("_profile", null)
-			)
-		);
+		for (Iterator<Integer> it = pendingMigrations.iterator(); it.hasNext(); )
+		{
+			int userId = it.next();
+			it.remove();
 
-		Document base = new Document();
-		mongoCollection.find(v2AggregateFilter)
-			.forEach((Consumer<? super Document>) (d -> // mongo has a bad overload here, need explicit cast -.-
+			try
+			{
+				migrateUser(userId);
+			}
+			catch (MongoException ex)
 			{
-				if (d != null)
+				// the background pass retries it
+				log.warn("unable to migrate v2 profile for user {}", userId, ex);
+			}
+		}
+	}
+
+	/**
+	 * Walk the collection in _id order a batch at a time, migrating any remaining v2 profiles. Once
+	 * a full pass finds nothing left to migrate this is recorded, and v2 writes stop checking for
+	 * legacy profiles. Only one node migrates at a time, and the position is kept in config_migration
+	 * so another node can carry on from it.
+	 */
+	@Scheduled(initialDelay = 60_000, fixedDelayString = "${runelite.config.migration.ms:10000}")
+	public void migrateV2Profiles()
+	{
+		if (migrationComplete)
+		{
+			return;
+		}
+
+		try (Jedis jedis = redisPool.getResource(MIGRATION_LOCK))
+		{
+			// the lock expires in case this node stops mid-batch
+			if (jedis.set(MIGRATION_LOCK, nodeId, "NX", "EX", 300L) == null)
+			{
+				// another node is migrating, check whether it has finished
+				migrationComplete = migrationCollection.find(and(eq("_id", MIGRATION_V2), eq("complete", true))).first() != null;
+				return;
+			}
+		}
+
+		try
+		{
+			migrateBatch();
+		}
+		finally
+		{
+			try (Jedis jedis = redisPool.getResource(MIGRATION_LOCK))
+			{
+				if (nodeId.equals(jedis.get(MIGRATION_LOCK)))
 				{
-					merge(d, base);
+					jedis.del(MIGRATION_LOCK);
 				}
-			}));
-		return base;
+			}
+		}
 	}
 
-	private static void merge(Document from, Document to)
+	private void migrateBatch()
 	{
-		for (Map.Entry<String, Object> entry : from.entrySet())
+		Document state = migrationCollection.find(eq("_id", MIGRATION_V2)).first();
+		if (state != null && Boolean.TRUE.equals(state.getBoolean("complete")))
 		{
-			String key = entry.getKey();
-			Object value = entry.getValue();
+			migrationComplete = true;
+			return;
+		}
 
-			if (value instanceof Document)
+		Object lastId = state != null ? state.get("lastId") : null;
+		boolean failed = state != null && Boolean.TRUE.equals(state.getBoolean("failed"));
+		Bson filter = lastId == null ? new Document() : gt("_id", lastId);
+		int scanned = 0;
+		try (MongoCursor<Document> cursor = mongoCollection.find(filter)
+			.projection(fields(include("_userId", "_profile.id")))
+			.sort(ascending("_id"))
+			.limit(MIGRATION_BATCH_SIZE)
+			.iterator())
+		{
+			while (cursor.hasNext())
 			{
-				Document d = (Document) to.get(key);
-				if (d == null)
+				Document doc = cursor.next();
+				lastId = doc.get("_id");
+				++scanned;
+
+				if (doc.get("_profile") != null)
+				{
+					continue;
+				}
+
+				int userId = doc.getInteger("_userId");
+				try
 				{
-					d = new Document();
-					to.put(key, d);
+					migrateUser(userId);
+				}
+				catch (MongoException ex)
+				{
+					log.warn("unable to migrate v2 profile for user {}", userId, ex);
+					failed = true;
 				}
-				merge((Document) value, d);
 			}
-			else
+		}
+
+		if (scanned < MIGRATION_BATCH_SIZE)
+		{
+			// end of the collection
+			if (!failed)
 			{
-				to.put(key, value);
+				migrationCollection.updateOne(eq("_id", MIGRATION_V2), set("complete", true), upsertUpdateOptions);
+				migrationComplete = true;
+				log.info("v2 profile migration complete");
+				return;
 			}
+
+			// start another pass to retry the failures
+			lastId = null;
+			failed = false;
 		}
+
+		migrationCollection.updateOne(eq("_id", MIGRATION_V2), combine(set("lastId", lastId), set("failed", failed)), upsertUpdateOptions);
+	}
+
+	private static int v2MergeOrder(RawBsonDocument profile)
+	{
+		Long profileId = RawConfigReader.readId(profile);
+		if (profileId != null)
+		{
+			if (profileId == PROFILE_ID_RSPROFILE)
+			{
+				return 2;
+			}
+			if (profileId == PROFILE_ID_DEFAULT)
+			{
+				return 1;
+			}
+		}
+		return 0;
 	}
 
 	public Configuration getV3(int userId, long profileId)
 	{
-		return unpackDbConfig(mongoCollection.find(profileFilter(userId, profileId)).first());
+		return getProfile(new ConfigKey(userId, profileId)).getConfiguration();
 	}
 
-	public Map<String, String> getV2(int userId)
+	/**
+	 * Get a profile's configuration for writing directly to a response. Large profiles are written
+	 * straight from the raw document instead of being unpacked first.
+	 *
+	 * @param userId
+	 * @param profileId
+	 * @return
+	 */
+	ConfigurationBody getV3Body(int userId, long profileId)
 	{
-		Configuration configuration = unpackDbConfig(getAggregateConfigV2(userId));
-		return configuration.getConfig();
+		return getProfile(new ConfigKey(userId, profileId)).getBody();
 	}
 
-	@Nonnull
-	private Configuration unpackDbConfig(Document configDocument)
+	/**
+	 * Get only the given groups of a profile. Only the requested groups are read from the database.
+	 *
+	 * @param userId
+	 * @param profileId
+	 * @param groups
+	 * @return
+	 */
+	ConfigurationBody getV3Body(int userId, long profileId, Collection<String> groups)
 	{
-		if (configDocument == null || configDocument.isEmpty())
+		Set<String> validGroups = new HashSet<>(groups.size());
+		for (String group : groups)
 		{
-			return new Configuration();
+			if (isValidGroup(group))
+			{
+				validGroups.add(group);
+			}
 		}
 
-		Map<String, String> userConfig = new LinkedHashMap<>();
-		for (String group : configDocument.keySet())
+		CachedConfiguration cached = configCache.getIfPresent(new ConfigKey(userId, profileId));
+		if (cached != null)
 		{
-			// Reserved keys
-			if (group.startsWith("_") || group.startsWith("$"))
-			{
-				continue;
-			}
+			return ConfigurationBody.of(filterGroups(cached.getConfiguration(), validGroups));
+		}
+
+		List<String> fields = new ArrayList<>(validGroups.size() + 1);
+		fields.addAll(validGroups);
+		fields.add("_profile.rev");
 
-			Map<String, Object> groupMap = (Map) configDocument.get(group);
+		RawBsonDocument configDocument = rawCollection.find(profileFilter(userId, profileId))
+			.projection(include(fields))
+			.first();
+		if (configDocument == null && !migrationComplete)
+		{
+			// may still be in a v2 profile
+			return ConfigurationBody.of(filterGroups(getProfile(new ConfigKey(userId, profileId)).getConfiguration(), validGroups));
+		}
+		return ConfigurationBody.of(RawConfigReader.unpack(configDocument));
+	}
 
-			for (Map.Entry<String, Object> entry : groupMap.entrySet())
+	private static Configuration filterGroups(Configuration configuration, Set<String> groups)
+	{
+		Map<String, String> config = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : configuration.getConfig().entrySet())
+		{
+			String key = entry.getKey();
+			int idx = key.indexOf('.');
+			if (idx != -1 && groups.contains(key.substring(0, idx)))
 			{
-				String key = entry.getKey();
-				Object value = entry.getValue();
+				config.put(key, entry.getValue());
+			}
+		}
 
-				if (value instanceof Map || value instanceof Collection)
-				{
-					value = GSON.toJson(entry.getValue());
-				}
-				else if (value == null)
-				{
-					continue;
-				}
+		Configuration filtered = new Configuration();
+		filtered.setRev(configuration.getRev());
+		filtered.setConfig(config);
+		return filtered;
+	}
 
-				userConfig.put(
-					group + "." + key.replace(':', '.'),
-					value.toString()
-				);
-			}
+	/**
+	 * Get a profile from the cache, or fetch and cache it
+	 *
+	 * @param key
+	 * @return
+	 */
+	private CachedConfiguration getProfile(ConfigKey key)
+	{
+		CachedConfiguration cached = configCache.getIfPresent(key);
+		if (cached != null)
+		{
+			return cached;
 		}
 
-		Configuration configuration = new Configuration();
-		configuration.setConfig(userConfig);
+		long generation = generation(key);
+		RawBsonDocument configDocument = rawCollection.find(profileFilter(key.getUserId(), key.getProfileId())).first();
+		if (configDocument == null)
+		{
+			return new CachedConfiguration(getUnmigrated(key));
+		}
 
-		Long rev = configDocument.getEmbedded(Arrays.asList("_profile", "rev"), Long.class);
+		long size = configDocument.getByteBuffer().remaining();
+		recordSize(key, size);
+		Long rev = RawConfigReader.readRev(configDocument);
+		// large profiles are kept as the raw document, which is smaller than the unpacked map
+		// and is streamed straight to the client
+		CachedConfiguration loaded = size > STREAM_THRESHOLD
+			? new CachedConfiguration(configDocument, rev != null ? rev : -1L)
+			: new CachedConfiguration(RawConfigReader.unpack(configDocument));
 		if (rev != null)
 		{
-			configuration.setRev(rev);
+			cache(key, generation, loaded);
 		}
+		return loaded;
+	}
 
+	/**
+	 * Read a v3 profile from a user's v2 profile, if they haven't been migrated yet
+	 *
+	 * @param key
+	 * @return the default or $rsprofile part of the v2 profile, or an empty configuration
+	 */
+	private Configuration getUnmigrated(ConfigKey key)
+	{
+		long profileId = key.getProfileId();
+		if (migrationComplete || (profileId != PROFILE_ID_DEFAULT && profileId != PROFILE_ID_RSPROFILE)
+			|| migratedUsers.getIfPresent(key.getUserId()) != null)
+		{
+			return new Configuration();
+		}
+
+		RawBsonDocument old = rawCollection.find(legacyFilter(key.getUserId())).first();
+		if (old == null)
+		{
+			return new Configuration();
+		}
+
+		pendingMigrations.add(key.getUserId());
+		Configuration configuration = RawConfigReader.unpack(old);
+		configuration.getConfig().keySet().removeIf(k -> isRsProfileKey(k) != (profileId == PROFILE_ID_RSPROFILE));
 		return configuration;
 	}
 
+	/**
+	 * Cache a fetched profile, unless it was invalidated while it was being fetched
+	 */
+	private void cache(ConfigKey key, long generation, CachedConfiguration cached)
+	{
+		if (generation(key) != generation)
+		{
+			return;
+		}
+
+		configCache.put(key, cached);
+		// an invalidation between the check and the put would otherwise be lost
+		if (generation(key) != generation)
+		{
+			configCache.invalidate(key);
+		}
+	}
+
+	private long generation(ConfigKey key)
+	{
+		return generations.get(Math.floorMod(key.hashCode(), GENERATIONS));
+	}
+
+	private void recordSize(ConfigKey key, long size)
+	{
+		profileSizes.put(key, size);
+		profileSizeDistribution.record(size);
+	}
+
+	/**
+	 * Get the rev of a profile without fetching its configuration
+	 *
+	 * @param userId
+	 * @param profileId
+	 * @return the rev, or null if the profile does not exist
+	 */
+	@Nullable
+	public Long getRevV3(int userId, long profileId)
+	{
+		CachedConfiguration cached = configCache.getIfPresent(new ConfigKey(userId, profileId));
+		if (cached != null)
+		{
+			return cached.rev;
+		}
+
+		RawBsonDocument rev = rawCollection.find(profileFilter(userId, profileId))
+			.projection(fields(include("_profile.rev")))
+			.first();
+		return rev == null ? null : RawConfigReader.readRev(rev);
+	}
+
+	/**
+	 * Get the changes made to a profile after the given rev. If the change log does not reach back
+	 * far enough the full configuration is returned instead.
+	 *
+	 * @param userId
+	 * @param profileId
+	 * @param since
+	 * @return
+	 */
+	public ConfigChanges getChangesV3(int userId, long profileId, long since)
+	{
+		ConfigChanges changes = new ConfigChanges();
+
+		Long rev = getRevV3(userId, profileId);
+		if (rev != null && since <= rev)
+		{
+			ConfigPatch patch = since == rev ? new ConfigPatch() : changeLog.changesSince(userId, profileId, since, rev);
+			if (patch != null)
+			{
+				changes.setRev(rev);
+				changes.setEdit(patch.getEdit());
+				changes.setUnset(patch.getUnset());
+				return changes;
+			}
+		}
+
+		Configuration configuration = getV3(userId, profileId);
+		changes.setRev(configuration.getRev());
+		changes.setFull(true);
+		changes.setEdit(configuration.getConfig());
+		return changes;
+	}
+
+	public Map<String, String> getV2(int userId)
+	{
+		// this is potentially prone to collision problems if the db still contains both a _profile = null and _profile = non-null simultaneously
+		// it shouldn't happen regardless since the v2 migration converts _profile = null to _profile = 0
+		Bson v2AggregateFilter = and(
+			eq("_userId", userId),
+			or(
+				eq("_profile.id", PROFILE_ID_DEFAULT),
+				eq("_profile.id", PROFILE_ID_RSPROFILE),
+				eq("_profile", null)
+			)
+		);
+
+		// Profiles are merged in a fixed order, null then default then $rsprofile, so later profiles
+		// win if a key is somehow in more than one. They are read straight into the map from the raw
+		// documents.
+		List<RawBsonDocument> profiles = rawCollection.find(v2AggregateFilter)
+			.projection(exclude("_id", "_userId"))
+			.into(new ArrayList<>(3));
+		profiles.sort(Comparator.comparingInt(ConfigService::v2MergeOrder));
+		return RawConfigReader.readMerged(profiles);
+	}
+
 	public ConfigPatchResult patchV3(int userId, long profileId, ConfigPatch patch)
 	{
 		List<String> failures = new ArrayList<>();
-		List<Bson> sets = new ArrayList<>(patch.getEdit().size() + patch.getUnset().size());
+		ConfigPatch validated = new ConfigPatch();
 		for (Map.Entry<String, String> entry : patch.getEdit().entrySet())
 		{
 			Bson s = setForKV(entry.getKey(), entry.getValue());
@@ -322,9 +789,13 @@ public class ConfigService
 			{
 				failures.add(entry.getKey());
 			}
+			else if (Strings.isNullOrEmpty(entry.getValue()))
+			{
+				validated.getUnset().add(entry.getKey());
+			}
 			else
 			{
-				sets.add(s);
+				validated.getEdit().put(entry.getKey(), entry.getValue());
 			}
 		}
 		for (String key : patch.getUnset())
@@ -336,9 +807,47 @@ public class ConfigService
 			}
 			else
 			{
-				sets.add(s);
+				validated.getUnset().add(key);
 			}
 		}
+		validated.setProfileName(patch.getProfileName());
+
+		ConfigKey key = new ConfigKey(userId, profileId);
+		Long size = profileSizes.getIfPresent(key);
+		if (size != null && size > maxProfileBytes && !validated.getEdit().isEmpty())
+		{
+			// the profile is too large, only allow it to shrink
+			log.debug("rejecting {} edits to profile {} for user {}, profile is {} bytes", validated.getEdit().size(), profileId, userId, size);
+			failures.addAll(validated.getEdit().keySet());
+			validated.getEdit().clear();
+			rejectedPatches.increment();
+		}
+
+		Long rev = coalescer != null ? coalescer.write(key, validated) : writePatch(key, validated);
+		return new ConfigPatchResult(rev, failures);
+	}
+
+	/**
+	 * Write an already validated patch
+	 *
+	 * @param key
+	 * @param patch
+	 * @return the new rev of the profile
+	 */
+	private Long writePatch(ConfigKey key, ConfigPatch patch)
+	{
+		int userId = key.getUserId();
+		long profileId = key.getProfileId();
+
+		List<Bson> sets = new ArrayList<>(patch.getEdit().size() + patch.getUnset().size() + 2);
+		for (Map.Entry<String, String> entry : patch.getEdit().entrySet())
+		{
+			sets.add(setForKV(entry.getKey(), entry.getValue()));
+		}
+		for (String unset : patch.getUnset())
+		{
+			sets.add(setForKV(unset, null));
+		}
 
 		if (patch.getProfileName() != null)
 		{
@@ -349,39 +858,198 @@ public class ConfigService
 		// this is so creating a new profile with no keys yet and setting sync on causes the service to
 		// create the profile. If it is not created the client considers it lost and
 		// marks it as unsynced when the client restarts next.
-		Long rev = null;
 		sets.add(INCREMENT_REV);
-		Document newRev;
+
+		long rev;
 		try
 		{
-			newRev = mongoCollection.findOneAndUpdate(
-				profileFilter(userId, profileId),
-				combine(sets),
-				upsertFindAndUpdateOptions
-			);
+			rev = writeSized(key, sets, patch);
 		}
 		catch (MongoCommandException ex)
 		{
 			log.error("error patching profile {} for user {} edits: {} unsets: {}", profileId, userId, patch.getEdit().size(), patch.getUnset().size());
 			throw ex;
 		}
-		if (newRev != null)
+
+		invalidate(userId, profileId);
+		try
 		{
-			rev = ((Document) newRev.get("_profile")).getLong("rev");
+			changeLog.append(userId, profileId, rev, patch.getEdit(), patch.getUnset());
 		}
+		catch (MongoException ex)
+		{
+			// a missing rev only causes clients to do a full fetch
+			log.warn("unable to log changes for profile {} rev {} for user {}", profileId, rev, userId, ex);
+		}
+		return rev;
+	}
 
-		return new ConfigPatchResult(rev, failures);
+	/**
+	 * Apply the update of a patch along with the change in size it makes to the profile. The entries the
+	 * patch replaces are read first, and the update is only applied if the profile is unchanged since, so
+	 * the size stays exact with concurrent patches.
+	 *
+	 * @param key
+	 * @param sets the update of the patch
+	 * @param patch
+	 * @return the new rev of the profile
+	 */
+	private long writeSized(ConfigKey key, List<Bson> sets, ConfigPatch patch)
+	{
+		Bson filter = profileFilter(key.getUserId(), key.getProfileId());
+		Bson projection = patchProjection(patch);
+		for (int attempt = 0; attempt < MAX_PATCH_ATTEMPTS; ++attempt)
+		{
+			Document before = mongoCollection.find(filter).projection(projection).first();
+			Document profile = before != null ? (Document) before.get("_profile") : null;
+			Object rev = profile != null ? profile.get("rev") : null;
+			Object trackedSize = profile != null ? profile.get("size") : null;
+
+			long size;
+			if (before == null || trackedSize instanceof Number)
+			{
+				size = (trackedSize instanceof Number ? ((Number) trackedSize).longValue() : 0L) + sizeDelta(before, patch);
+			}
+			else
+			{
+				// profiles written before sizes were tracked, or last written by v2, are measured once
+				RawBsonDocument configDocument = rawCollection.find(filter).first();
+				if (configDocument == null)
+				{
+					continue;
+				}
+				size = configDocument.getByteBuffer().remaining() + sizeDelta(before, patch);
+			}
+
+			List<Bson> update = new ArrayList<>(sets);
+			update.add(set("_profile.size", size));
+			try
+			{
+				// a profile which doesn't exist yet is created, anything else is only written if its rev hasn't moved on
+				UpdateResult result = mongoCollection.updateOne(
+					and(filter, rev == null ? exists("_profile.rev", false) : eq("_profile.rev", rev)),
+					combine(update),
+					before == null ? upsertUpdateOptions : updateOptions
+				);
+				if (result.getMatchedCount() == 0 && result.getUpsertedId() == null)
+				{
+					continue;
+				}
+			}
+			catch (MongoWriteException ex)
+			{
+				if (ex.getError().getCategory() != ErrorCategory.DUPLICATE_KEY)
+				{
+					throw ex;
+				}
+				// created by another patch
+				continue;
+			}
+
+			recordSize(key, size);
+			return (rev instanceof Number ? ((Number) rev).longValue() : 0L) + 1L;
+		}
+
+		// The profile is being written too often to keep up with. The size is dropped so the next patch
+		// measures it, and the new rev is read back.
+		log.debug("unable to track size of profile {} for user {}", key.getProfileId(), key.getUserId());
+		List<Bson> update = new ArrayList<>(sets);
+		update.add(unset("_profile.size"));
+		Document after = mongoCollection.findOneAndUpdate(filter, combine(update), upsertFindAndUpdateOptions);
+		return ((Number) ((Document) after.get("_profile")).get("rev")).longValue();
 	}
 
-	public List<String> patchV2(int userId, ConfigPatch patch)
+	/**
+	 * The fields of a profile a patch needs to work out its change in size: the rev, the tracked size
+	 * and the entries the patch replaces
+	 *
+	 * @param patch
+	 * @return
+	 */
+	private static Bson patchProjection(ConfigPatch patch)
 	{
-		boolean v3Mode = mongoCollection.find(
-			and(
-				eq("_userId", userId),
-				not(eq("_profile", null))
-			)
-		).first() != null;
+		List<String> fields = new ArrayList<>(patch.getEdit().size() + patch.getUnset().size() + 2);
+		fields.add("_profile.rev");
+		fields.add("_profile.size");
+		for (String key : patch.getEdit().keySet())
+		{
+			fields.add(dbKey(key));
+		}
+		for (String key : patch.getUnset())
+		{
+			fields.add(dbKey(key));
+		}
+		return include(fields);
+	}
+
+	/**
+	 * Compute how much a patch changes the encoded size of a profile
+	 *
+	 * @param before the profile before the patch, with at least the entries the patch replaces
+	 * @param patch
+	 * @return the change in bytes
+	 */
+	static long sizeDelta(@Nullable Document before, ConfigPatch patch)
+	{
+		long delta = 0L;
+		for (Map.Entry<String, String> entry : patch.getEdit().entrySet())
+		{
+			String dbKey = dbKey(entry.getKey());
+			delta += entrySize(dbKey, entry.getValue()) - entrySize(dbKey, before);
+		}
+		for (String key : patch.getUnset())
+		{
+			delta -= entrySize(dbKey(key), before);
+		}
+		return delta;
+	}
+
+	private static long entrySize(String dbKey, @Nullable Document profile)
+	{
+		if (profile == null)
+		{
+			return 0L;
+		}
+
+		int idx = dbKey.indexOf('.');
+		Object group = profile.get(dbKey.substring(0, idx));
+		if (!(group instanceof Document))
+		{
+			return 0L;
+		}
+
+		Object value = ((Document) group).get(dbKey.substring(idx + 1));
+		// legacy values which aren't strings are counted by their string form
+		return value == null ? 0L : entrySize(dbKey, value.toString());
+	}
+
+	private static long entrySize(String dbKey, String value)
+	{
+		// the group is already part of the profile, only the element within it is counted
+		String key = dbKey.substring(dbKey.indexOf('.') + 1);
+		return Utf8.encodedLength(key) + Utf8.encodedLength(value) + ENTRY_OVERHEAD;
+	}
+
+	@PreDestroy
+	public void shutdown()
+	{
+		if (coalescer != null)
+		{
+			coalescer.shutdown();
+		}
+
+		try
+		{
+			subscription.close();
+		}
+		catch (IOException ex)
+		{
+			log.warn("unable to close config invalidation subscription", ex);
+		}
+	}
 
+	public List<String> patchV2(int userId, ConfigPatch patch)
+	{
 		List<String> failures = new ArrayList<>();
 		List<Bson> defaultSets = new ArrayList<>(patch.getEdit().size() + patch.getUnset().size());
 		List<Bson> rsProfileSets = new ArrayList<>(patch.getEdit().size() + patch.getUnset().size());
@@ -394,7 +1062,7 @@ public class ConfigService
 			}
 			else
 			{
-				List<Bson> targetProfile = v3Mode && isRsProfileKey(entry.getKey()) ? rsProfileSets : defaultSets;
+				List<Bson> targetProfile = isRsProfileKey(entry.getKey()) ? rsProfileSets : defaultSets;
 				targetProfile.add(s);
 			}
 		}
@@ -407,33 +1075,62 @@ public class ConfigService
 			}
 			else
 			{
-				List<Bson> targetProfile = v3Mode && isRsProfileKey(key) ? rsProfileSets : defaultSets;
+				List<Bson> targetProfile = isRsProfileKey(key) ? rsProfileSets : defaultSets;
 				targetProfile.add(s);
 			}
 		}
 
-		if (defaultSets.size() > 0)
+		if (!migrationComplete && migratedUsers.getIfPresent(userId) == null && !(defaultSets.isEmpty() && rsProfileSets.isEmpty()))
 		{
-			if (v3Mode)
+			// The user may not have been reached by the migration yet. If they still have a v2 profile
+			// the patch is written to it, and carried over when it is migrated.
+			List<Bson> legacySets = new ArrayList<>(defaultSets.size() + rsProfileSets.size());
+			legacySets.addAll(defaultSets);
+			legacySets.addAll(rsProfileSets);
+			if (mongoCollection.updateOne(legacyFilter(userId), combine(legacySets)).getMatchedCount() > 0)
 			{
-				defaultSets.add(INCREMENT_REV);
+				pendingMigrations.add(userId);
+				invalidate(userId, PROFILE_ID_DEFAULT);
+				invalidate(userId, PROFILE_ID_RSPROFILE);
+				return failures;
 			}
 
-			mongoCollection.updateOne(
-				profileFilter(userId, v3Mode ? PROFILE_ID_DEFAULT : null),
+			migratedUsers.put(userId, Boolean.TRUE);
+		}
+
+		List<WriteModel<Document>> writes = new ArrayList<>(2);
+		if (defaultSets.size() > 0)
+		{
+			defaultSets.add(setOnInsert("_profile.name", DEFAULT_PROFILE.getName()));
+			// the user is known to have no v2 profile
+			defaultSets.add(setOnInsert(MIGRATED_FIELD, true));
+			// v2 writes don't track the size, the next v3 write measures it
+			defaultSets.add(unset("_profile.size"));
+			defaultSets.add(INCREMENT_REV);
+			writes.add(new UpdateOneModel<>(
+				profileFilter(userId, PROFILE_ID_DEFAULT),
 				combine(defaultSets),
 				upsertUpdateOptions
-			);
+			));
 		}
 
-		if (v3Mode && rsProfileSets.size() > 0)
+		if (rsProfileSets.size() > 0)
 		{
+			rsProfileSets.add(setOnInsert("_profile.name", RS_PROFILE.getName()));
+			rsProfileSets.add(unset("_profile.size"));
 			rsProfileSets.add(INCREMENT_REV);
-			mongoCollection.updateOne(
+			writes.add(new UpdateOneModel<>(
 				profileFilter(userId, PROFILE_ID_RSPROFILE),
 				combine(rsProfileSets),
 				upsertUpdateOptions
-			);
+			));
+		}
+
+		if (!writes.isEmpty())
+		{
+			mongoCollection.bulkWrite(writes, orderedBulkWriteOptions);
+			invalidate(userId, PROFILE_ID_DEFAULT);
+			invalidate(userId, PROFILE_ID_RSPROFILE);
 		}
 
 		return failures;
@@ -445,16 +1142,53 @@ public class ConfigService
 			profileFilter(userId, profileId),
 			set("_profile.name", name)
 		);
+		invalidate(userId, profileId);
 		return updateResult.getModifiedCount() > 0;
 	}
 
 	public boolean deleteV3(int userId, long profileId)
 	{
-		return mongoCollection.deleteOne(profileFilter(userId, profileId)).getDeletedCount() > 0;
+		boolean deleted = mongoCollection.deleteOne(profileFilter(userId, profileId)).getDeletedCount() > 0;
+		changeLog.delete(userId, profileId);
+		invalidate(userId, profileId);
+		return deleted;
+	}
+
+	/**
+	 * Drop a profile from the cache of this and every other node
+	 */
+	private void invalidate(int userId, long profileId)
+	{
+		invalidateLocal(new ConfigKey(userId, profileId));
+
+		try (Jedis jedis = redisPool.getResource())
+		{
+			jedis.publish(INVALIDATE_CHANNEL, nodeId + " " + userId + " " + profileId);
+		}
+		catch (JedisException ex)
+		{
+			// other nodes keep serving the old profile until their entry expires
+			log.warn("unable to publish invalidation of profile {} for user {}", profileId, userId, ex);
+		}
+	}
+
+	private void invalidateLocal(ConfigKey key)
+	{
+		generations.incrementAndGet(Math.floorMod(key.hashCode(), GENERATIONS));
+		configCache.invalidate(key);
+	}
+
+	private void invalidateAllLocal()
+	{
+		for (int i = 0; i < GENERATIONS; ++i)
+		{
+			generations.incrementAndGet(i);
+		}
+		configCache.invalidateAll();
 	}
 
 	@Nullable
-	private Bson setForKV(String key, @Nullable String value)
+	private static Bson setForKV(String key, @Nullable String value)
 	{
 		if (key.startsWith("$") || key.startsWith("_"))
 		{
@@ -467,7 +1201,7 @@ public class ConfigService
 			return null;
 		}
 
-		String dbKey = split[0] + "." + split[1].replace('.', ':');
+		String dbKey = dbKey(key);
 
 		if (Strings.isNullOrEmpty(value))
 		{
@@ -482,6 +1216,15 @@ public class ConfigService
 		return set(dbKey, value);
 	}
 
+	/**
+	 * Convert a config key, which has already been validated, to its path in the profile document
+	 */
+	private static String dbKey(String key)
+	{
+		String[] split = key.split("\\.", 2);
+		return split[0] + "." + split[1].replace('.', ':');
+	}
+
 	// if it exists, the v2 index ({ _userId : 1 }, { unique : true }) will prevent multiple profiles per-user 
 	private void dropIndexV2()
 	{
@@ -503,6 +1246,11 @@ public class ConfigService
 		}
 	}
 
+	private static boolean isValidGroup(String group)
+	{
+		return !group.isEmpty() && !group.startsWith("_") && !group.startsWith("$") && group.indexOf('.') == -1;
+	}
+
 	private static boolean validateStr(String value)
 	{
 		return value.length() < MAX_VALUE_LENGTH;
@@ -520,6 +1268,59 @@ public class ConfigService
 		return key.startsWith("rsprofile.");
 	}
 
+	/**
+	 * A cached profile, either unpacked or as the raw document for large profiles
+	 */
+	private static class CachedConfiguration
+	{
+		@Nullable
+		final Configuration configuration;
+		@Nullable
+		final RawBsonDocument document;
+		final long rev;
+		final int weight;
+
+		CachedConfiguration(Configuration configuration)
+		{
+			this.configuration = configuration;
+			this.document = null;
+			this.rev = configuration.getRev();
+
+			int weight = 0;
+			for (Map.Entry<String, String> entry : configuration.getConfig().entrySet())
+			{
+				weight += entry.getKey().length() + entry.getValue().length();
+			}
+			this.weight = weight;
+		}
+
+		CachedConfiguration(RawBsonDocument document, long rev)
+		{
+			this.configuration = null;
+			this.document = document;
+			this.rev = rev;
+			this.weight = document.getByteBuffer().remaining();
+		}
+
+		Configuration getConfiguration()
+		{
+			return configuration != null ? configuration : RawConfigReader.unpack(document);
+		}
+
+		ConfigurationBody getBody()
+		{
+			return configuration != null ? ConfigurationBody.of(configuration) : ConfigurationBody.streamed(document);
+		}
+	}
+
+	private static Bson legacyFilter(int userId)
+	{
+		return and(
+			eq("_userId", userId),
+			eq("_profile", null)
+		);
+	}
+
 	private static Bson profileFilter(int userId, @Nullable Long profileId)
 	{
 		return and(
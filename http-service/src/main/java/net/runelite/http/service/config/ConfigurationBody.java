@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import net.runelite.http.api.RuneLiteAPI;
+import net.runelite.http.api.config.Configuration;
+import org.bson.RawBsonDocument;
+
+/**
+ * A v3 configuration to be written as json. It is either an unpacked {@link Configuration}, or
+ * a raw profile document which is written in a single pass without building the config map.
+ * Both produce the same json.
+ */
+class ConfigurationBody
+{
+	private static final Gson GSON = RuneLiteAPI.GSON;
+
+	private final Configuration configuration;
+	private final RawBsonDocument document;
+	private final long rev;
+
+	private ConfigurationBody(Configuration configuration, RawBsonDocument document, long rev)
+	{
+		this.configuration = configuration;
+		this.document = document;
+		this.rev = rev;
+	}
+
+	static ConfigurationBody of(Configuration configuration)
+	{
+		return new ConfigurationBody(configuration, null, configuration.getRev());
+	}
+
+	static ConfigurationBody streamed(RawBsonDocument document)
+	{
+		Long rev = RawConfigReader.readRev(document);
+		return new ConfigurationBody(null, document, rev != null ? rev : -1L);
+	}
+
+	long getRev()
+	{
+		return rev;
+	}
+
+	void writeTo(Writer writer) throws IOException
+	{
+		if (configuration != null)
+		{
+			GSON.toJson(configuration, writer);
+			return;
+		}
+
+		JsonWriter json = GSON.newJsonWriter(writer);
+		json.beginObject();
+		json.name("rev").value(rev);
+		json.name("config").beginObject();
+		RawConfigReader.readEntries(document, (key, value) -> json.name(key).value(value));
+		json.endObject();
+		json.endObject();
+		json.flush();
+	}
+}
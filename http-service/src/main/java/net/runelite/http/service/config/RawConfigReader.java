@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import net.runelite.http.api.RuneLiteAPI;
+import net.runelite.http.api.config.Configuration;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.io.ByteBufferBsonInput;
+
+/**
+ * Reads config entries directly from the raw bson of a profile document, without first
+ * decoding it into a {@link org.bson.Document}
+ */
+class RawConfigReader
+{
+	private static final Gson GSON = RuneLiteAPI.GSON;
+	private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+	private static final BsonValueCodec BSON_VALUE_CODEC = new BsonValueCodec();
+	private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+	interface EntryConsumer
+	{
+		void accept(String key, String value) throws IOException;
+	}
+
+	static void readEntries(RawBsonDocument document, EntryConsumer consumer) throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		try (BsonBinaryReader reader = new BsonBinaryReader(new ByteBufferBsonInput(document.getByteBuffer())))
+		{
+			reader.readStartDocument();
+			while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+			{
+				String group = reader.readName();
+
+				// Reserved keys
+				if (group.startsWith("_") || group.startsWith("$") || reader.getCurrentBsonType() != BsonType.DOCUMENT)
+				{
+					reader.skipValue();
+					continue;
+				}
+
+				reader.readStartDocument();
+				while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+				{
+					String key = reader.readName();
+					String value = readValue(reader);
+					if (value == null)
+					{
+						continue;
+					}
+
+					consumer.accept(configKey(sb, group, key), value);
+				}
+				reader.readEndDocument();
+			}
+			reader.readEndDocument();
+		}
+	}
+
+	static Configuration unpack(@Nullable RawBsonDocument document)
+	{
+		Configuration configuration = new Configuration();
+		if (document == null || document.isEmpty())
+		{
+			return configuration;
+		}
+
+		Map<String, String> userConfig = new LinkedHashMap<>();
+		try
+		{
+			readEntries(document, userConfig::put);
+		}
+		catch (IOException ex)
+		{
+			// not thrown by Map.put
+			throw new IllegalStateException(ex);
+		}
+		configuration.setConfig(userConfig);
+
+		Long rev = readRev(document);
+		if (rev != null)
+		{
+			configuration.setRev(rev);
+		}
+		return configuration;
+	}
+
+	/**
+	 * Read the entries of several profiles into one map, entries of later profiles replacing those of
+	 * earlier ones. Legacy document values are merged into the same entry of earlier profiles, as v2
+	 * profiles always have been.
+	 *
+	 * @param documents
+	 * @return
+	 */
+	static Map<String, String> readMerged(List<RawBsonDocument> documents)
+	{
+		Map<String, String> config = new LinkedHashMap<>();
+		// the document values seen so far, which are rare
+		Map<String, Document> nested = new HashMap<>();
+		StringBuilder sb = new StringBuilder();
+		for (RawBsonDocument document : documents)
+		{
+			try (BsonBinaryReader reader = new BsonBinaryReader(new ByteBufferBsonInput(document.getByteBuffer())))
+			{
+				reader.readStartDocument();
+				while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+				{
+					String group = reader.readName();
+
+					// Reserved keys
+					if (group.startsWith("_") || group.startsWith("$") || reader.getCurrentBsonType() != BsonType.DOCUMENT)
+					{
+						reader.skipValue();
+						continue;
+					}
+
+					reader.readStartDocument();
+					while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+					{
+						String key = configKey(sb, group, reader.readName());
+						if (reader.getCurrentBsonType() == BsonType.DOCUMENT)
+						{
+							Document value = DOCUMENT_CODEC.decode(reader, DECODER_CONTEXT);
+							Document existing = nested.get(key);
+							if (existing != null)
+							{
+								merge(value, existing);
+								value = existing;
+							}
+							nested.put(key, value);
+							config.put(key, GSON.toJson(value));
+							continue;
+						}
+
+						nested.remove(key);
+						String value = readValue(reader);
+						if (value == null)
+						{
+							config.remove(key);
+						}
+						else
+						{
+							config.put(key, value);
+						}
+					}
+					reader.readEndDocument();
+				}
+				reader.readEndDocument();
+			}
+		}
+		return config;
+	}
+
+	static void merge(Document from, Document to)
+	{
+		for (Map.Entry<String, Object> entry : from.entrySet())
+		{
+			String key = entry.getKey();
+			Object value = entry.getValue();
+
+			if (value instanceof Document)
+			{
+				Object existing = to.get(key);
+				Document d;
+				if (existing instanceof Document)
+				{
+					d = (Document) existing;
+				}
+				else
+				{
+					d = new Document();
+					to.put(key, d);
+				}
+				merge((Document) value, d);
+			}
+			else
+			{
+				to.put(key, value);
+			}
+		}
+	}
+
+	@Nullable
+	static Long readId(BsonDocument document)
+	{
+		return readProfileLong(document, "id");
+	}
+
+	@Nullable
+	static Long readRev(BsonDocument document)
+	{
+		return readProfileLong(document, "rev");
+	}
+
+	@Nullable
+	static Long readSize(BsonDocument document)
+	{
+		return readProfileLong(document, "size");
+	}
+
+	@Nullable
+	private static Long readProfileLong(BsonDocument document, String field)
+	{
+		BsonValue profile = document.get("_profile");
+		if (profile == null || !profile.isDocument())
+		{
+			return null;
+		}
+
+		BsonValue value = profile.asDocument().get(field);
+		return value != null && value.isNumber() ? value.asNumber().longValue() : null;
+	}
+
+	@Nullable
+	private static String readValue(BsonReader reader)
+	{
+		switch (reader.getCurrentBsonType())
+		{
+			case STRING:
+				return reader.readString();
+			case NULL:
+				reader.readNull();
+				return null;
+			case INT32:
+				return Integer.toString(reader.readInt32());
+			case INT64:
+				return Long.toString(reader.readInt64());
+			case DOUBLE:
+				return Double.toString(reader.readDouble());
+			case BOOLEAN:
+				return Boolean.toString(reader.readBoolean());
+			default:
+			{
+				// legacy values such as nested documents and arrays are rare, so decode them the same way
+				// a Document would to keep the output unchanged
+				BsonValue bsonValue = BSON_VALUE_CODEC.decode(reader, DECODER_CONTEXT);
+				BsonDocument wrapper = new BsonDocument("v", bsonValue);
+				Object value = DOCUMENT_CODEC.decode(new BsonDocumentReader(wrapper), DECODER_CONTEXT).get("v");
+				if (value instanceof Map || value instanceof Collection)
+				{
+					return GSON.toJson(value);
+				}
+				return value == null ? null : value.toString();
+			}
+		}
+	}
+
+	private static String configKey(StringBuilder sb, String group, String key)
+	{
+		sb.setLength(0);
+		sb.append(group).append('.');
+		for (int i = 0; i < key.length(); ++i)
+		{
+			char c = key.charAt(i);
+			sb.append(c == ':' ? '.' : c);
+		}
+		return sb.toString();
+	}
+}
@@ -78,6 +78,7 @@ public class ItemService
 	private final CacheService cacheService;
 	private final OkHttpClient okHttpClient;
 	private final HttpUrl digestUrl;
+	private List<ItemDefinition> insertedItems;
 
 	@Autowired
 	public ItemService(
@@ -180,8 +181,13 @@ public class ItemService
 			log.warn("Failed to load any items from cache, item price updating will be disabled");
 		}
 
-		// catch any item renames
-		insertItems(items);
+		// catch any item renames. the cache service returns the same list until the item archive changes,
+		// so there is nothing new to insert if it is the list inserted last time
+		if (items != insertedItems)
+		{
+			insertItems(items);
+			insertedItems = items;
+		}
 
 		RSPrices rsPrices = fetchRsPrices();
 		insertPrices(rsPrices);
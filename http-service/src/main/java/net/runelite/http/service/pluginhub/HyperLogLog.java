@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.pluginhub;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A HyperLogLog using the same hash, precision and register layout as Redis, so that
+ * it can be serialized and merged into a Redis HyperLogLog with PFMERGE.
+ * Not thread safe.
+ */
+class HyperLogLog
+{
+	static final int P = 14;
+	static final int REGISTERS = 1 << P;
+
+	private static final int Q = 64 - P;
+	private static final int BITS = 6;
+	private static final int HEADER_SIZE = 16;
+	private static final int DENSE_SIZE = HEADER_SIZE + (REGISTERS * BITS + 7) / 8;
+	private static final byte ENCODING_DENSE = 0;
+	private static final byte ENCODING_SPARSE = 1;
+	private static final int SEED = 0xadc83b19;
+
+	/**
+	 * Largest register value the sparse encoding can represent
+	 */
+	private static final int SPARSE_VAL_MAX = 32;
+	/**
+	 * Number of registers kept sparse before switching to dense registers
+	 */
+	private static final int SPARSE_MAX = 1024;
+
+	private Map<Integer, Integer> sparse = new TreeMap<>();
+	private byte[] dense;
+
+	/**
+	 * Add an element
+	 *
+	 * @param element
+	 * @return true if a register was changed
+	 */
+	boolean add(byte[] element)
+	{
+		long hash = murmurHash64A(element, SEED);
+		int index = (int) (hash & (REGISTERS - 1));
+		hash >>>= P;
+		// ensure the count is at most Q + 1
+		hash |= 1L << Q;
+		int count = Long.numberOfTrailingZeros(hash) + 1;
+		return set(index, count);
+	}
+
+	private boolean set(int index, int count)
+	{
+		if (dense != null)
+		{
+			if (count > dense[index])
+			{
+				dense[index] = (byte) count;
+				return true;
+			}
+			return false;
+		}
+
+		Integer old = sparse.get(index);
+		if (old != null && old >= count)
+		{
+			return false;
+		}
+
+		sparse.put(index, count);
+		if (count > SPARSE_VAL_MAX || sparse.size() > SPARSE_MAX)
+		{
+			dense = new byte[REGISTERS];
+			for (Map.Entry<Integer, Integer> entry : sparse.entrySet())
+			{
+				dense[entry.getKey()] = (byte) (int) entry.getValue();
+			}
+			sparse = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Merge another HyperLogLog into this one, so that it counts the union of both
+	 *
+	 * @param other
+	 */
+	void merge(HyperLogLog other)
+	{
+		if (other.dense != null)
+		{
+			for (int i = 0; i < REGISTERS; ++i)
+			{
+				if (other.dense[i] != 0)
+				{
+					set(i, other.dense[i]);
+				}
+			}
+		}
+		else
+		{
+			for (Map.Entry<Integer, Integer> entry : other.sparse.entrySet())
+			{
+				set(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Serialize to the Redis representation, sparse if possible
+	 *
+	 * @return
+	 */
+	byte[] serialize()
+	{
+		if (dense != null)
+		{
+			return serializeDense();
+		}
+
+		// at most one ZERO or XZERO and one VAL opcode per set register, plus the trailing zeros
+		byte[] out = new byte[HEADER_SIZE + sparse.size() * 3 + 2];
+		int pos = writeHeader(out, ENCODING_SPARSE);
+		int next = 0;
+		for (Map.Entry<Integer, Integer> entry : sparse.entrySet())
+		{
+			int index = entry.getKey();
+			pos = writeZeros(out, pos, index - next);
+			// VAL: 1vvvvvxx, value - 1 and run length - 1
+			out[pos++] = (byte) (0x80 | ((entry.getValue() - 1) << 2));
+			next = index + 1;
+		}
+		pos = writeZeros(out, pos, REGISTERS - next);
+
+		byte[] result = new byte[pos];
+		System.arraycopy(out, 0, result, 0, pos);
+		return result;
+	}
+
+	private static int writeZeros(byte[] out, int pos, int len)
+	{
+		while (len > 0)
+		{
+			if (len > 64)
+			{
+				// XZERO: 01xxxxxx yyyyyyyy, run length - 1
+				int run = Math.min(len, REGISTERS);
+				out[pos++] = (byte) (0x40 | ((run - 1) >> 8));
+				out[pos++] = (byte) (run - 1);
+				len -= run;
+			}
+			else
+			{
+				// ZERO: 00xxxxxx, run length - 1
+				out[pos++] = (byte) (len - 1);
+				len = 0;
+			}
+		}
+		return pos;
+	}
+
+	private byte[] serializeDense()
+	{
+		byte[] out = new byte[DENSE_SIZE];
+		writeHeader(out, ENCODING_DENSE);
+		for (int i = 0; i < REGISTERS; ++i)
+		{
+			int val = dense[i];
+			if (val == 0)
+			{
+				continue;
+			}
+
+			// registers are 6 bits, packed starting at the least significant bit
+			int b = HEADER_SIZE + i * BITS / 8;
+			int fb = i * BITS & 7;
+			out[b] |= val << fb;
+			if (b + 1 < out.length)
+			{
+				out[b + 1] |= val >> (8 - fb);
+			}
+		}
+		return out;
+	}
+
+	private static int writeHeader(byte[] out, byte encoding)
+	{
+		out[0] = 'H';
+		out[1] = 'Y';
+		out[2] = 'L';
+		out[3] = 'L';
+		out[4] = encoding;
+		// the cached cardinality is marked invalid, so redis computes it on the next PFCOUNT
+		out[15] = (byte) 0x80;
+		return HEADER_SIZE;
+	}
+
+	/**
+	 * MurmurHash64A, as used by Redis
+	 */
+	static long murmurHash64A(byte[] data, int seed)
+	{
+		final long m = 0xc6a4a7935bd1e995L;
+		final int r = 47;
+		final int len = data.length;
+
+		long h = (seed & 0xffffffffL) ^ (len * m);
+
+		int end = len - (len & 7);
+		for (int i = 0; i < end; i += 8)
+		{
+			long k = (data[i] & 0xffL)
+				| (data[i + 1] & 0xffL) << 8
+				| (data[i + 2] & 0xffL) << 16
+				| (data[i + 3] & 0xffL) << 24
+				| (data[i + 4] & 0xffL) << 32
+				| (data[i + 5] & 0xffL) << 40
+				| (data[i + 6] & 0xffL) << 48
+				| (data[i + 7] & 0xffL) << 56;
+
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+
+			h ^= k;
+			h *= m;
+		}
+
+		int rem = len & 7;
+		if (rem > 0)
+		{
+			for (int i = rem - 1; i >= 0; --i)
+			{
+				h ^= (data[end + i] & 0xffL) << (i * 8);
+			}
+			h *= m;
+		}
+
+		h ^= h >>> r;
+		h *= m;
+		h ^= h >>> r;
+		return h;
+	}
+}
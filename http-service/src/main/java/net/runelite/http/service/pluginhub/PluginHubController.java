@@ -26,56 +26,195 @@ package net.runelite.http.service.pluginhub;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.http.service.util.redis.HotKeyTracker;
 import net.runelite.http.service.util.redis.RedisPool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 @RestController
 @RequestMapping("/pluginhub")
+@Slf4j
 public class PluginHubController
 {
-	@Value("${pluginhub.stats.days:7}")
-	private int days;
+	private static final String PLUGINS_KEY = "pluginhub.plugins";
+	/**
+	 * How long after midnight the windows are merged, so the final sketches of the previous day
+	 * from every instance have been flushed
+	 */
+	private static final Duration MERGE_DELAY = Duration.ofMinutes(10);
 
-	@Value("${pluginhub.stats.expire:90}")
-	private int expireDays;
+	private final int days;
+	private final int[] windows;
+	/**
+	 * Days the daily sketches are kept for. Redis keeps a sketch sparse, up to 3 KiB, until it has
+	 * a few thousand elements and then dense at 12 KiB, so the daily keys take up to
+	 * plugins * expireDays * 12 KiB, about 1 GiB for 1000 plugins over 90 days. Only the longest
+	 * window is read.
+	 */
+	private final int expireDays;
+	private final long flushMs;
+	private final RedisPool redisPool;
+	private final HotKeyTracker hotKeyTracker;
 
-	@Autowired
-	private RedisPool redisPool;
+	/**
+	 * Submissions are added to a local hyperloglog per plugin and day, which are periodically
+	 * merged into the redis hyperloglogs
+	 */
+	private final Map<PluginDay, HyperLogLog> pending = new ConcurrentHashMap<>();
+	/**
+	 * Prefix of the temporary keys sketches are uploaded to before being merged
+	 */
+	private final String tmpPrefix = "pluginhub.tmp." + UUID.randomUUID() + ".";
+
+	/**
+	 * Runs the flushes and rebuilds, so they aren't held up by or holding up the other scheduled jobs
+	 */
+	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2,
+		new ThreadFactoryBuilder()
+			.setNameFormat("pluginhub-%d")
+			.setDaemon(true)
+			.build()
+	);
+
+	private final Timer submitTimer;
+	private final Timer flushTimer;
+	private final Timer rebuildTimer;
+	private final Counter flushFailures;
 
 	private final Cache<String, String> pluginCache = CacheBuilder.newBuilder()
 		.maximumSize(512L)
 		.build();
 
-	private Map<String, Long> pluginCounts = Collections.emptyMap();
+	private volatile Map<Integer, Map<String, Long>> windowCounts = Collections.emptyMap();
+	private volatile PluginRanks pluginRanks = PluginRanks.EMPTY;
+
+	/**
+	 * The day the rolling windows were last merged for
+	 */
+	private LocalDate mergedDate;
+
+	@Autowired
+	public PluginHubController(
+		RedisPool redisPool,
+		HotKeyTracker hotKeyTracker,
+		MeterRegistry meterRegistry,
+		@Value("${pluginhub.stats.days:7}") int days,
+		@Value("${pluginhub.stats.windows:7,30}") int[] windows,
+		@Value("${pluginhub.stats.expire:90}") int expireDays,
+		@Value("${pluginhub.flush.ms:5000}") long flushMs
+	)
+	{
+		this.redisPool = redisPool;
+		this.hotKeyTracker = hotKeyTracker;
+		this.days = days;
+		this.windows = windows;
+		this.expireDays = expireDays;
+		this.flushMs = flushMs;
+		for (int window : windows)
+		{
+			if (window > expireDays)
+			{
+				log.warn("pluginhub window of {} days is longer than the {} day retention", window, expireDays);
+			}
+		}
+		if (IntStream.of(windows).noneMatch(w -> w == days))
+		{
+			throw new IllegalArgumentException("pluginhub.stats.days must be one of pluginhub.stats.windows");
+		}
+
+		submitTimer = meterRegistry.timer("runelite pluginhub submit");
+		flushTimer = meterRegistry.timer("runelite pluginhub flush");
+		rebuildTimer = meterRegistry.timer("runelite pluginhub rebuild");
+		flushFailures = meterRegistry.counter("runelite pluginhub flush failed");
+	}
+
+	@PostConstruct
+	public void start()
+	{
+		scheduler.scheduleWithFixedDelay(() -> run("flush", () -> flushTimer.record(this::flush)), flushMs, flushMs, TimeUnit.MILLISECONDS);
+		scheduler.scheduleWithFixedDelay(() -> run("rebuild", () -> rebuildTimer.record(() -> rebuild(Instant.now()))),
+			30_000L, 1_800_000L, TimeUnit.MILLISECONDS); // 30 minutes with 30 second initial delay
+	}
+
+	private static void run(String name, Runnable task)
+	{
+		try
+		{
+			task.run();
+		}
+		catch (RuntimeException ex)
+		{
+			// an exception would cancel the task
+			log.warn("error running pluginhub {}", name, ex);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown()
+	{
+		scheduler.shutdownNow();
+		flush();
+	}
 
 	@GetMapping
-	public ResponseEntity<Map<String, Long>> get()
+	public ResponseEntity<Map<String, Long>> get(@RequestParam(name = "days", required = false) Integer window)
 	{
-		if (pluginCounts.isEmpty())
+		Map<String, Long> counts = pluginRanks.getCounts();
+		if (window != null)
+		{
+			if (IntStream.of(windows).noneMatch(w -> w == window))
+			{
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "days must be one of " + IntStream.of(windows)
+					.mapToObj(Integer::toString)
+					.collect(Collectors.joining(", ")));
+			}
+
+			counts = windowCounts.getOrDefault(window, Collections.emptyMap());
+		}
+
+		if (counts.isEmpty())
 		{
 			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
 				.cacheControl(CacheControl.noCache())
@@ -84,108 +223,320 @@ public class PluginHubController
 
 		return ResponseEntity.ok()
 			.cacheControl(CacheControl.maxAge(30, TimeUnit.MINUTES).cachePublic())
-			.body(pluginCounts);
+			.body(counts);
 	}
 
 	@GetMapping("/shields/installs/plugin/{pluginName}")
-	public ResponseEntity<ShieldsFormat> installs(@PathVariable String pluginName)
+	public ResponseEntity<String> installs(@PathVariable String pluginName)
 	{
-		if (pluginCounts.isEmpty())
+		PluginRanks ranks = pluginRanks;
+		if (ranks.isEmpty())
 		{
 			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
 				.cacheControl(CacheControl.noCache())
 				.build();
 		}
 
-		long count = pluginCounts.getOrDefault(pluginName, -1L);
 		return ResponseEntity.ok()
 			.cacheControl(CacheControl.maxAge(30, TimeUnit.MINUTES).cachePublic())
-			.body(new ShieldsFormat(count, "Total installs"));
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(ranks.getInstallsJson(pluginName));
 	}
 
 	@GetMapping("/shields/rank/plugin/{pluginName}")
-	public ResponseEntity<ShieldsFormat> rank(@PathVariable String pluginName)
+	public ResponseEntity<String> rank(@PathVariable String pluginName)
 	{
-		if (pluginCounts.isEmpty())
+		PluginRanks ranks = pluginRanks;
+		if (ranks.isEmpty())
 		{
 			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
 				.cacheControl(CacheControl.noCache())
 				.build();
 		}
 
+		return ResponseEntity.ok()
+			.cacheControl(CacheControl.maxAge(30, TimeUnit.MINUTES).cachePublic())
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(ranks.getRankJson(pluginName));
+	}
 
-		long rank = -1;
-		long installs = pluginCounts.getOrDefault(pluginName, -1L);
-		if (installs != -1L)
+	@PostMapping
+	public void submit(HttpServletRequest request, @RequestBody String[] plugins)
+	{
+		long start = System.nanoTime();
+		final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+		final String ip = request.getHeader("X-Forwarded-For");
+		if (ip == null)
 		{
-			rank = 1;
-			for (Map.Entry<String, Long> entry : pluginCounts.entrySet())
+			return;
+		}
+
+		final byte[] element = ip.getBytes(StandardCharsets.UTF_8);
+		for (String plugin : plugins)
+		{
+			if (!plugin.matches("[a-z0-9-]+"))
+			{
+				continue;
+			}
+
+			pending.compute(new PluginDay(plugin, today), (k, hll) ->
 			{
-				if (entry.getValue() > installs)
+				if (hll == null)
 				{
-					rank++;
+					hll = new HyperLogLog();
 				}
-			}
+				hll.add(element);
+				return hll;
+			});
 		}
-
-		return ResponseEntity.ok()
-			.cacheControl(CacheControl.maxAge(30, TimeUnit.MINUTES).cachePublic())
-			.body(new ShieldsFormat(rank, "Plugin rank"));
+		submitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 	}
 
-	@PostMapping
-	public void submit(HttpServletRequest request, @RequestBody String[] plugins)
+	/**
+	 * Merge the pending sketches into redis. Each sketch is uploaded to a temporary key in the redis
+	 * hyperloglog format and pfmerged into the daily key and the window keys of its day. If the flush
+	 * fails the sketches are put back to be retried with the next flush.
+	 */
+	private void flush()
 	{
-		final String date = Instant.now().atZone(ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE);
-		final String ip = request.getHeader("X-Forwarded-For");
-		try (Jedis jedis = redisPool.getResource())
+		if (pending.isEmpty())
+		{
+			return;
+		}
+
+		Map<PluginDay, HyperLogLog> taken = new HashMap<>();
+		Map<PluginDay, byte[]> sketches = new HashMap<>();
+		for (PluginDay key : pending.keySet())
 		{
-			for (String plugin : plugins)
+			HyperLogLog hll = pending.remove(key);
+			if (hll != null)
 			{
-				if (!plugin.matches("[a-z0-9-]+"))
+				taken.put(key, hll);
+				sketches.put(key, hll.serialize());
+			}
+		}
+
+		final int expire = (int) (Duration.ofDays(expireDays).toMillis() / 1000L);
+		final int windowExpire = (int) Duration.ofDays(2).getSeconds();
+		try
+		{
+			// each pipeline must only contain keys of one node when clustered
+			List<String> added = new ArrayList<>();
+			for (List<Map.Entry<PluginDay, byte[]>> group : redisPool.groupByNode(sketches.entrySet(), e -> dailyKey(e.getKey().getPlugin(), e.getKey().getDay())))
+			{
+				List<Response<String>> merges = new ArrayList<>(group.size());
+				try (Jedis jedis = redisPool.getResource(dailyKey(group.get(0).getKey().getPlugin(), group.get(0).getKey().getDay())))
 				{
-					continue;
+					Pipeline pipeline = jedis.pipelined();
+					for (Map.Entry<PluginDay, byte[]> entry : group)
+					{
+						String plugin = entry.getKey().getPlugin();
+						String key = dailyKey(plugin, entry.getKey().getDay());
+						// submissions are aggregated locally, so redis sees one write of the key per flush
+						hotKeyTracker.record(key);
+						// the temporary key has the same hash tag as the daily key, so they are in the same slot
+						String tmpKey = tmpPrefix + key;
+
+						// the temporary key expires in case the merge or delete doesn't happen
+						pipeline.setex(tmpKey.getBytes(StandardCharsets.UTF_8), 60, entry.getValue());
+						merges.add(pipeline.pfmerge(key, tmpKey));
+						pipeline.expire(key, expire);
+						for (int window : windows)
+						{
+							if (window > 1)
+							{
+								String windowKey = windowKey(plugin, window, entry.getKey().getDay());
+								merges.add(pipeline.pfmerge(windowKey, tmpKey));
+								pipeline.expire(windowKey, windowExpire);
+							}
+						}
+						pipeline.del(tmpKey);
+
+						if (pluginCache.getIfPresent(plugin) == null)
+						{
+							added.add(plugin);
+						}
+					}
+					pipeline.sync();
 				}
 
-				jedis.pfadd("pluginhub." + plugin + "." + date, ip);
+				for (Response<String> merge : merges)
+				{
+					// throws if the merge failed
+					merge.get();
+				}
+			}
 
-				if (pluginCache.getIfPresent(plugin) == null)
+			if (!added.isEmpty())
+			{
+				try (Jedis jedis = redisPool.getResource(PLUGINS_KEY))
 				{
-					jedis.sadd("pluginhub.plugins", plugin);
-					// additionally set the ttl on the hyperloglog since it might be a new key
-					jedis.expire("pluginhub." + plugin + "." + date, (int) (Duration.ofDays(expireDays).toMillis() / 1000L));
+					jedis.sadd(PLUGINS_KEY, added.toArray(new String[0]));
+				}
 
+				for (String plugin : added)
+				{
 					pluginCache.put(plugin, plugin);
 				}
 			}
 		}
+		catch (RuntimeException e)
+		{
+			flushFailures.increment();
+			log.warn("unable to flush {} pluginhub sketches", sketches.size(), e);
+
+			// merging into a daily key is idempotent, so the sketches which were merged before the
+			// failure can be merged again
+			for (Map.Entry<PluginDay, HyperLogLog> entry : taken.entrySet())
+			{
+				pending.merge(entry.getKey(), entry.getValue(), (hll, failed) ->
+				{
+					hll.merge(failed);
+					return hll;
+				});
+			}
+		}
 	}
 
-	@Scheduled(fixedDelay = 1_800_000, initialDelay = 30_000) // 30 minutes with 30 second initial delay
-	public void rebuildCounts()
+	void rebuild(Instant now)
 	{
-		Map<String, Long> counts = new HashMap<>();
-		try (Jedis jedis = redisPool.getResource())
+		final LocalDate today = now.atOffset(ZoneOffset.UTC).toLocalDate();
+		Set<String> plugins;
+		try (Jedis jedis = redisPool.getResource(PLUGINS_KEY))
+		{
+			plugins = jedis.smembers(PLUGINS_KEY);
+		}
+
+		if (!today.equals(mergedDate)
+			&& !now.isBefore(today.atStartOfDay().toInstant(ZoneOffset.UTC).plus(MERGE_DELAY))
+			&& mergeWindows(plugins, today))
 		{
-			Set<String> plugins = jedis.smembers("pluginhub.plugins");
-			ZonedDateTime time = Instant.now().atZone(ZoneOffset.UTC);
+			mergedDate = today;
+		}
+		// until the completed days are merged into today's windows, the windows ending yesterday are counted
+		final LocalDate windowDay = today.equals(mergedDate) ? today : today.minusDays(1);
 
-			for (String plugin : plugins)
+		Map<Integer, Map<String, Response<Long>>> responses = new HashMap<>();
+		for (List<String> group : redisPool.groupByNode(plugins, plugin -> dailyKey(plugin, today)))
+		{
+			try (Jedis jedis = redisPool.getResource(dailyKey(group.get(0), today)))
 			{
-				// When called with multiple keys, pfcount returns the approximated
-				// cardinality of the union of the HyperLogLogs. We use this to determine
-				// the number of users in the last N days.
-				String[] keys = IntStream.range(0, days - 1)
-					.mapToObj(time::minusDays)
-					.map(zdt -> "pluginhub." + plugin + "." + zdt.format(DateTimeFormatter.ISO_LOCAL_DATE))
-					.toArray(String[]::new);
-				long cnt = jedis.pfcount(keys);
+				Pipeline pipeline = jedis.pipelined();
+				for (int window : windows)
+				{
+					Map<String, Response<Long>> windowResponses = responses.computeIfAbsent(window, w -> new HashMap<>());
+					for (String plugin : group)
+					{
+						String key = window <= 1 ? dailyKey(plugin, today) : windowKey(plugin, window, windowDay);
+						windowResponses.put(plugin, pipeline.pfcount(key));
+					}
+				}
+				pipeline.sync();
+			}
+		}
+
+		Map<Integer, Map<String, Long>> counts = new HashMap<>();
+		for (int window : windows)
+		{
+			Map<String, Long> windowCount = new HashMap<>();
+			for (Map.Entry<String, Response<Long>> entry : responses.getOrDefault(window, Collections.emptyMap()).entrySet())
+			{
+				long cnt = entry.getValue().get();
 				if (cnt > 0)
 				{
-					counts.put(plugin, cnt);
+					windowCount.put(entry.getKey(), cnt);
 				}
 			}
+			counts.put(window, windowCount);
 		}
-		pluginCounts = counts;
+		windowCounts = counts;
+		pluginRanks = new PluginRanks(counts.getOrDefault(days, Collections.emptyMap()));
+	}
+
+	/**
+	 * Merge the completed days of each window into the window hyperloglog of each plugin for today,
+	 * which the flushes have been adding today's submissions to, once per day across all instances.
+	 *
+	 * @return true if the windows for today are merged
+	 */
+	private boolean mergeWindows(Set<String> plugins, LocalDate today)
+	{
+		final String date = today.format(DateTimeFormatter.ISO_LOCAL_DATE);
+		final String mergedKey = "pluginhub.merged." + date;
+		final String lockKey = "pluginhub.merging." + date;
+		try (Jedis jedis = redisPool.getResource(mergedKey))
+		{
+			if (jedis.exists(mergedKey))
+			{
+				return true;
+			}
+		}
+
+		// the lock expires so that an instance dying mid-merge doesn't prevent the merge
+		try (Jedis jedis = redisPool.getResource(lockKey))
+		{
+			if (jedis.set(lockKey, "1", "NX", "EX", 600L) == null)
+			{
+				// another instance is merging, check again on the next rebuild
+				return false;
+			}
+		}
+
+		// sketches of the previous day which this instance still has pending must be in the daily keys first
+		flush();
+
+		final int expire = (int) Duration.ofDays(2).getSeconds();
+		for (List<String> group : redisPool.groupByNode(plugins, plugin -> dailyKey(plugin, today)))
+		{
+			try (Jedis jedis = redisPool.getResource(dailyKey(group.get(0), today)))
+			{
+				Pipeline pipeline = jedis.pipelined();
+				for (int window : windows)
+				{
+					if (window <= 1)
+					{
+						continue;
+					}
+
+					for (String plugin : group)
+					{
+						String[] keys = IntStream.range(1, window)
+							.mapToObj(today::minusDays)
+							.map(day -> dailyKey(plugin, day))
+							.toArray(String[]::new);
+						String key = windowKey(plugin, window, today);
+						pipeline.pfmerge(key, keys);
+						pipeline.expire(key, expire);
+					}
+				}
+				pipeline.sync();
+			}
+		}
+
+		try (Jedis jedis = redisPool.getResource(mergedKey))
+		{
+			jedis.setex(mergedKey, expire, "1");
+		}
+
+		log.info("Merged {} pluginhub windows for {} plugins", windows.length, plugins.size());
+		return true;
+	}
+
+	/**
+	 * Keys of a plugin are tagged with the plugin name, so in a cluster multi-key commands over
+	 * the daily and window keys of a plugin are in one slot
+	 */
+	private String dailyKey(String plugin, LocalDate day)
+	{
+		return "pluginhub." + redisPool.tag(plugin) + "." + day.format(DateTimeFormatter.ISO_LOCAL_DATE);
+	}
+
+	/**
+	 * Key of the hyperloglog of a window ending on {@code day}. The submissions of the day are merged
+	 * into it as they are flushed, and the completed days of the window once they are merged.
+	 */
+	private String windowKey(String plugin, int window, LocalDate day)
+	{
+		return "pluginhub." + redisPool.tag(plugin) + "." + window + "d." + day.format(DateTimeFormatter.ISO_LOCAL_DATE);
 	}
 }
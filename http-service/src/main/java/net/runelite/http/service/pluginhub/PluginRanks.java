@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.pluginhub;
+
+import com.google.gson.Gson;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.runelite.http.api.RuneLiteAPI;
+
+/**
+ * Immutable snapshot of plugin install counts with their ranks and shields responses precomputed
+ */
+class PluginRanks
+{
+	static final PluginRanks EMPTY = new PluginRanks(Collections.emptyMap());
+
+	private static final Gson GSON = RuneLiteAPI.GSON;
+	private static final String UNKNOWN_INSTALLS = GSON.toJson(new ShieldsFormat(-1L, "Total installs"));
+	private static final String UNKNOWN_RANK = GSON.toJson(new ShieldsFormat(-1L, "Plugin rank"));
+
+	private final Map<String, Long> counts;
+	/**
+	 * install counts, descending
+	 */
+	private final long[] sortedCounts;
+	private final Map<String, Integer> ranks;
+	private final Map<String, String> installsJson;
+	private final Map<String, String> rankJson;
+
+	PluginRanks(Map<String, Long> counts)
+	{
+		this.counts = Collections.unmodifiableMap(counts);
+
+		sortedCounts = counts.values().stream()
+			.mapToLong(Long::longValue)
+			.map(l -> -l)
+			.sorted()
+			.map(l -> -l)
+			.toArray();
+
+		ranks = new HashMap<>(counts.size());
+		installsJson = new HashMap<>(counts.size());
+		rankJson = new HashMap<>(counts.size());
+		for (Map.Entry<String, Long> entry : counts.entrySet())
+		{
+			long installs = entry.getValue();
+			int rank = rankOf(installs);
+			ranks.put(entry.getKey(), rank);
+			installsJson.put(entry.getKey(), GSON.toJson(new ShieldsFormat(installs, "Total installs")));
+			rankJson.put(entry.getKey(), GSON.toJson(new ShieldsFormat(rank, "Plugin rank")));
+		}
+	}
+
+	/**
+	 * The rank of a count is one more than the number of plugins with strictly more installs
+	 */
+	private int rankOf(long installs)
+	{
+		// find the first index of installs in the descending array
+		int lo = 0;
+		int hi = sortedCounts.length;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (sortedCounts[mid] > installs)
+			{
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid;
+			}
+		}
+		return lo + 1;
+	}
+
+	boolean isEmpty()
+	{
+		return counts.isEmpty();
+	}
+
+	Map<String, Long> getCounts()
+	{
+		return counts;
+	}
+
+	/**
+	 * @return the rank of the plugin, or -1 if it has no installs
+	 */
+	int getRank(String plugin)
+	{
+		return ranks.getOrDefault(plugin, -1);
+	}
+
+	String getInstallsJson(String plugin)
+	{
+		return installsJson.getOrDefault(plugin, UNKNOWN_INSTALLS);
+	}
+
+	String getRankJson(String plugin)
+	{
+		return rankJson.getOrDefault(plugin, UNKNOWN_RANK);
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.util.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The slot to node mapping of a redis cluster, from the reply to CLUSTER SLOTS
+ */
+class ClusterSlots
+{
+	static final int SLOTS = 16384;
+
+	/**
+	 * host:port of the master serving each slot
+	 */
+	private final String[] owners;
+
+	private ClusterSlots(String[] owners)
+	{
+		this.owners = owners;
+	}
+
+	/**
+	 * Parse a CLUSTER SLOTS reply. Each entry is the start and end slot, followed by the
+	 * master and then replicas, each as host, port and id.
+	 *
+	 * @param reply
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	static ClusterSlots parse(List<Object> reply)
+	{
+		String[] owners = new String[SLOTS];
+		for (Object o : reply)
+		{
+			List<Object> range = (List<Object>) o;
+			int start = ((Long) range.get(0)).intValue();
+			int end = ((Long) range.get(1)).intValue();
+			List<Object> master = (List<Object>) range.get(2);
+			String host = new String((byte[]) master.get(0), StandardCharsets.UTF_8);
+			long port = (Long) master.get(1);
+			Arrays.fill(owners, start, end + 1, host + ":" + port);
+		}
+		return new ClusterSlots(owners);
+	}
+
+	/**
+	 * @param slot
+	 * @return host:port of the node serving the slot, or null if the slot is not served
+	 */
+	String getNode(int slot)
+	{
+		return owners[slot];
+	}
+
+	Set<String> getNodes()
+	{
+		Set<String> nodes = new LinkedHashSet<>();
+		for (String owner : owners)
+		{
+			if (owner != null)
+			{
+				nodes.add(owner);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Compute the slot of a key. If the key contains a hash tag, {...}, only the tag is hashed.
+	 *
+	 * @param key
+	 * @return
+	 */
+	static int slot(String key)
+	{
+		int start = key.indexOf('{');
+		if (start != -1)
+		{
+			int end = key.indexOf('}', start + 1);
+			if (end > start + 1)
+			{
+				key = key.substring(start + 1, end);
+			}
+		}
+		return crc16(key.getBytes(StandardCharsets.UTF_8)) & (SLOTS - 1);
+	}
+
+	/**
+	 * CRC16-CCITT (XMODEM), as used for redis cluster key slots
+	 */
+	static int crc16(byte[] data)
+	{
+		int crc = 0;
+		for (byte b : data)
+		{
+			crc ^= (b & 0xff) << 8;
+			for (int i = 0; i < 8; ++i)
+			{
+				if ((crc & 0x8000) != 0)
+				{
+					crc = (crc << 1) ^ 0x1021;
+				}
+				else
+				{
+					crc <<= 1;
+				}
+			}
+			crc &= 0xffff;
+		}
+		return crc;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.util.redis;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks the most frequently accessed redis keys with a Count-Min sketch and a top-k list.
+ * Counts are halved periodically, so they reflect recent traffic.
+ */
+@Component
+public class HotKeyTracker
+{
+	private static final HashFunction HASH = Hashing.murmur3_128();
+	private static final int DEPTH = 4;
+	private static final int WIDTH = 4096;
+
+	private final AtomicIntegerArray sketch = new AtomicIntegerArray(DEPTH * WIDTH);
+	private final Map<String, Integer> top = new ConcurrentHashMap<>();
+	private final int size;
+	private final int threshold;
+
+	/**
+	 * The smallest count in the top keys when it was last pruned
+	 */
+	private volatile int floor;
+
+	@Autowired
+	HotKeyTracker(
+		@Value("${redis.hotkeys.size:20}") int size,
+		@Value("${redis.hotkeys.threshold:500}") int threshold,
+		MeterRegistry meterRegistry
+	)
+	{
+		this.size = size;
+		this.threshold = threshold;
+
+		Gauge.builder("runelite redis hot keys", this, t -> t.getHotKeys().size())
+			.register(meterRegistry);
+		Gauge.builder("runelite redis hottest key", this, t -> t.top.values().stream().mapToInt(Integer::intValue).max().orElse(0))
+			.register(meterRegistry);
+	}
+
+	/**
+	 * Record an access of a key
+	 *
+	 * @param key
+	 * @return the estimated recent access count of the key
+	 */
+	public int record(String key)
+	{
+		HashCode hash = HASH.hashString(key, StandardCharsets.UTF_8);
+		long h1 = hash.asLong();
+		long h2 = h1 >>> 32 | h1 << 32;
+
+		int estimate = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; ++i)
+		{
+			int idx = i * WIDTH + (int) ((h1 + i * h2) & (WIDTH - 1));
+			estimate = Math.min(estimate, sketch.incrementAndGet(idx));
+		}
+
+		if (estimate > floor || top.containsKey(key) || top.size() < size)
+		{
+			top.put(key, estimate);
+			if (top.size() > size * 2)
+			{
+				prune();
+			}
+		}
+		return estimate;
+	}
+
+	/**
+	 * @param count estimated count returned by {@link #record(String)}
+	 * @return if the count makes the key hot
+	 */
+	public boolean isHot(int count)
+	{
+		return count >= threshold;
+	}
+
+	private synchronized void prune()
+	{
+		List<Map.Entry<String, Integer>> entries = new ArrayList<>(top.entrySet());
+		if (entries.size() <= size)
+		{
+			return;
+		}
+
+		entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+		for (Map.Entry<String, Integer> entry : entries.subList(size, entries.size()))
+		{
+			top.remove(entry.getKey());
+		}
+		floor = entries.get(size - 1).getValue();
+	}
+
+	@Scheduled(fixedDelayString = "${redis.hotkeys.decay.ms:10000}")
+	public void decay()
+	{
+		for (int i = 0; i < sketch.length(); ++i)
+		{
+			sketch.updateAndGet(i, v -> v >> 1);
+		}
+
+		top.replaceAll((k, v) -> v >> 1);
+		top.values().removeIf(v -> v == 0);
+		floor >>= 1;
+	}
+
+	/**
+	 * @return the most accessed keys, most accessed first
+	 */
+	public List<HotKey> getTopKeys()
+	{
+		List<HotKey> keys = new ArrayList<>(top.size());
+		for (Map.Entry<String, Integer> entry : top.entrySet())
+		{
+			keys.add(new HotKey(entry.getKey(), entry.getValue()));
+		}
+		keys.sort(Comparator.comparingInt(HotKey::getCount).reversed());
+		return keys.size() > size ? new ArrayList<>(keys.subList(0, size)) : keys;
+	}
+
+	/**
+	 * @return the top keys which are above the hot threshold
+	 */
+	public List<HotKey> getHotKeys()
+	{
+		List<HotKey> keys = getTopKeys();
+		keys.removeIf(k -> !isHot(k.getCount()));
+		return keys;
+	}
+}
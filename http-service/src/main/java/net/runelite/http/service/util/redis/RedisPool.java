@@ -24,64 +24,517 @@
  */
 package net.runelite.http.service.util.redis;
 
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
 
 @Component
 @Slf4j
 public class RedisPool
 {
 	private final String redisHost;
-	private final BlockingQueue<Jedis> queue;
+	private final int queueSize;
+	/**
+	 * Password from the seed uri, which the nodes discovered from the cluster slots also require
+	 */
+	private final String password;
 
-	RedisPool(@Value("${redis.pool.size:10}") int queueSize, @Value("${redis.host:localhost}") String redisHost)
+	/**
+	 * If set, redisHost is a seed node of a redis cluster, and connections are to the
+	 * node serving the slot of the key they are requested for
+	 */
+	private final boolean cluster;
+	/**
+	 * The only node, when not in cluster mode
+	 */
+	private final Node node;
+	/**
+	 * Cluster nodes by host:port
+	 */
+	private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+	private volatile ClusterSlots slots;
+
+	RedisPool(
+		@Value("${redis.pool.size:10}") int queueSize,
+		@Value("${redis.host:localhost}") String redisHost,
+		@Value("${redis.cluster:false}") boolean cluster
+	)
 	{
 		this.redisHost = redisHost;
+		this.queueSize = queueSize;
+		this.cluster = cluster;
+		this.password = password(redisHost);
 
-		queue = new ArrayBlockingQueue<>(queueSize);
-		for (int i = 0; i < queueSize; ++i)
+		if (!cluster)
+		{
+			node = new Node(redisHost, -1);
+			return;
+		}
+
+		node = null;
+		try
 		{
-			Jedis jedis = new PooledJedis(redisHost);
-			queue.offer(jedis);
+			refreshSlots();
+		}
+		catch (JedisException e)
+		{
+			log.warn("unable to read cluster slots, will retry on first use", e);
 		}
 	}
 
+	/**
+	 * Get a connection to any node. In cluster mode this must only be used for commands without
+	 * keys, such as PUBLISH, which is broadcast to the whole cluster.
+	 *
+	 * @return
+	 */
 	public Jedis getResource()
 	{
-		Jedis jedis;
+		if (!cluster)
+		{
+			return node.borrow();
+		}
+
+		return nodeForSlot(0).borrow();
+	}
+
+	/**
+	 * Get a connection to the node serving a key. All keys used on the connection must
+	 * hash to the same node, which keys sharing a {@link #tag(String) hash tag} always do.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public Jedis getResource(String key)
+	{
+		if (!cluster)
+		{
+			return node.borrow();
+		}
+
+		return nodeForSlot(ClusterSlots.slot(key)).borrow();
+	}
+
+	/**
+	 * Wrap part of a key in a hash tag when in cluster mode, so all keys with the
+	 * same tag are in the same slot. Keys are unchanged when not in cluster mode.
+	 *
+	 * @param s
+	 * @return
+	 */
+	public String tag(String s)
+	{
+		return cluster ? "{" + s + "}" : s;
+	}
+
+	/**
+	 * Group items by the node serving their key, so each group can be sent
+	 * in a single pipeline with {@link #getResource(String)} of any key in the group.
+	 *
+	 * @param items
+	 * @param key
+	 * @param <T>
+	 * @return the non-empty groups
+	 */
+	public <T> Collection<List<T>> groupByNode(Collection<T> items, Function<T, String> key)
+	{
+		if (items.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		if (!cluster)
+		{
+			return Collections.singletonList(new ArrayList<>(items));
+		}
+
+		Map<Node, List<T>> groups = new HashMap<>();
+		for (T item : items)
+		{
+			Node n = nodeForSlot(ClusterSlots.slot(key.apply(item)));
+			groups.computeIfAbsent(n, k -> new ArrayList<>()).add(item);
+		}
+		return groups.values();
+	}
+
+	/**
+	 * Run commands on a connection to the node serving a key. In cluster mode, if the node redirects
+	 * the key's slot, the commands are retried once: on the new node after refreshing the slot map if
+	 * the slot has moved, or on the importing node if the slot is being migrated. Redirections are only
+	 * seen when replies are read, so pipelines should be synced with {@link #sync(Pipeline)}. The
+	 * commands are run again in full, so must be safe to repeat.
+	 *
+	 * @param key
+	 * @param commands
+	 * @param <T>
+	 * @return the result of the commands
+	 */
+	public <T> T execute(String key, Function<Jedis, T> commands)
+	{
+		try (Jedis jedis = getResource(key))
+		{
+			return commands.apply(jedis);
+		}
+		catch (JedisAskDataException e)
+		{
+			HostAndPort target = e.getTargetNode();
+			try (Jedis jedis = node(target.getHost() + ":" + target.getPort()).borrow())
+			{
+				// allows the next command to access the importing slot, so a pipeline is only redirected for its first command
+				jedis.asking();
+				return commands.apply(jedis);
+			}
+		}
+		catch (JedisMovedDataException e)
+		{
+			log.debug("slot {} has moved to {}, refreshing cluster slots", e.getSlot(), e.getTargetNode());
+			refreshSlots();
+		}
+
+		try (Jedis jedis = getResource(key))
+		{
+			return commands.apply(jedis);
+		}
+	}
+
+	/**
+	 * Sync a pipeline, throwing the first redirection in its replies, which {@link Pipeline#sync()}
+	 * would otherwise discard
+	 *
+	 * @param pipeline
+	 */
+	public static void sync(Pipeline pipeline)
+	{
+		for (Object reply : pipeline.syncAndReturnAll())
+		{
+			if (reply instanceof JedisRedirectionException)
+			{
+				throw (JedisRedirectionException) reply;
+			}
+		}
+	}
+
+	private Node nodeForSlot(int slot)
+	{
+		ClusterSlots s = slots;
+		if (s == null)
+		{
+			s = refreshSlots();
+		}
+
+		String address = s.getNode(slot);
+		if (address == null)
+		{
+			throw new JedisException("slot " + slot + " is not served by any node");
+		}
+
+		return node(address);
+	}
+
+	private Node node(String address)
+	{
+		return nodes.computeIfAbsent(address, a ->
+		{
+			int idx = a.lastIndexOf(':');
+			return new Node(a.substring(0, idx), Integer.parseInt(a.substring(idx + 1)));
+		});
+	}
+
+	/**
+	 * Read the slot mapping from the seed node, or from any known node if the seed is unavailable
+	 */
+	private synchronized ClusterSlots refreshSlots()
+	{
+		List<Jedis> candidates = new ArrayList<>();
+		// the seed is a uri, so carries its own password
+		candidates.add(new Jedis(redisHost));
+		for (Node n : nodes.values())
+		{
+			candidates.add(n.connect());
+		}
+
+		JedisException failure = null;
+		for (Jedis jedis : candidates)
+		{
+			try (Jedis j = jedis)
+			{
+				ClusterSlots s = ClusterSlots.parse(j.clusterSlots());
+				slots = s;
+				return s;
+			}
+			catch (JedisException e)
+			{
+				failure = e;
+			}
+		}
+		throw failure;
+	}
+
+	@Scheduled(fixedDelayString = "${redis.cluster.refresh.ms:30000}")
+	public void refreshCluster()
+	{
+		if (!cluster)
+		{
+			return;
+		}
+
+		try
+		{
+			Set<String> live = refreshSlots().getNodes();
+			for (Iterator<Map.Entry<String, Node>> it = nodes.entrySet().iterator(); it.hasNext(); )
+			{
+				Map.Entry<String, Node> entry = it.next();
+				if (!live.contains(entry.getKey()))
+				{
+					log.info("redis node {} has left the cluster", entry.getKey());
+					it.remove();
+					entry.getValue().close();
+				}
+			}
+		}
+		catch (JedisException e)
+		{
+			log.warn("unable to refresh cluster slots", e);
+		}
+	}
+
+	/**
+	 * Read the password from a redis uri
+	 *
+	 * @param uri
+	 * @return the password, or null if there is none
+	 */
+	static String password(String uri)
+	{
+		String userInfo;
 		try
 		{
-			jedis = queue.poll(1, TimeUnit.SECONDS);
+			userInfo = URI.create(uri).getUserInfo();
 		}
-		catch (InterruptedException e)
+		catch (IllegalArgumentException e)
 		{
-			throw new RuntimeException(e);
+			// a plain host
+			return null;
 		}
-		if (jedis == null)
+
+		if (userInfo == null)
 		{
-			throw new RuntimeException("Unable to acquire connection from pool, timeout");
+			return null;
+		}
+
+		// redis:// uris have an empty user before the colon
+		int idx = userInfo.indexOf(':');
+		String password = idx == -1 ? userInfo : userInfo.substring(idx + 1);
+		return password.isEmpty() ? null : password;
+	}
+
+	/**
+	 * Subscribe to channels on a dedicated connection and thread, resubscribing if the
+	 * connection is lost. {@link JedisPubSub#onSubscribe(String, int)} is called on each
+	 * (re)subscribe, so messages missed while disconnected can be accounted for.
+	 * In cluster mode the subscription is made to the node serving the first channel's slot.
+	 *
+	 * @param pubSub
+	 * @param channels
+	 * @return closing the subscription unsubscribes and stops the thread
+	 */
+	public Closeable subscribe(JedisPubSub pubSub, String... channels)
+	{
+		AtomicBoolean closed = new AtomicBoolean();
+		Thread thread = new Thread(() ->
+		{
+			while (!closed.get())
+			{
+				try (Jedis jedis = cluster ? nodeForSlot(ClusterSlots.slot(channels[0])).connect() : node.connect())
+				{
+					// blocks until unsubscribed
+					jedis.subscribe(pubSub, channels);
+				}
+				catch (JedisException e)
+				{
+					if (closed.get())
+					{
+						return;
+					}
+
+					log.warn("lost subscription to {}, resubscribing", Arrays.toString(channels), e);
+					try
+					{
+						Thread.sleep(1000L);
+					}
+					catch (InterruptedException ex)
+					{
+						return;
+					}
+				}
+			}
+		}, "redis-subscribe-" + String.join(",", channels));
+		thread.setDaemon(true);
+		thread.start();
+
+		return () ->
+		{
+			closed.set(true);
+			if (pubSub.isSubscribed())
+			{
+				pubSub.unsubscribe();
+			}
+		};
+	}
+
+	private class Node
+	{
+		/**
+		 * host, or a redis uri if port is -1
+		 */
+		private final String host;
+		private final int port;
+		private final BlockingQueue<Jedis> queue;
+		/**
+		 * Set once the node has left the cluster, after which returned connections are closed
+		 */
+		private volatile boolean closed;
+
+		Node(String host, int port)
+		{
+			this.host = host;
+			this.port = port;
+
+			queue = new ArrayBlockingQueue<>(queueSize);
+			for (int i = 0; i < queueSize; ++i)
+			{
+				queue.offer(newPooled());
+			}
+		}
+
+		PooledJedis newPooled()
+		{
+			if (port == -1)
+			{
+				return new PooledJedis(this, host);
+			}
+			return authenticate(new PooledJedis(this, host, port));
+		}
+
+		Jedis borrow()
+		{
+			Jedis jedis;
+			try
+			{
+				jedis = queue.poll(1, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			if (jedis == null)
+			{
+				throw new RuntimeException("Unable to acquire connection from pool, timeout");
+			}
+			return jedis;
+		}
+
+		/**
+		 * Create an unpooled connection to the node
+		 */
+		Jedis connect()
+		{
+			if (port == -1)
+			{
+				return new Jedis(host);
+			}
+			return authenticate(new Jedis(host, port));
+		}
+
+		/**
+		 * Close the pooled connections, and those still borrowed as they are returned
+		 */
+		void close()
+		{
+			closed = true;
+			drain();
+		}
+
+		private void drain()
+		{
+			Jedis jedis;
+			while ((jedis = queue.poll()) != null)
+			{
+				// PooledJedis.close() disconnects once the node is closed
+				jedis.close();
+			}
+		}
+	}
+
+	private <T extends Jedis> T authenticate(T jedis)
+	{
+		if (password != null)
+		{
+			// sent when the connection is opened
+			jedis.getClient().setPassword(password);
 		}
 		return jedis;
 	}
 
 	class PooledJedis extends Jedis
 	{
-		PooledJedis(String host)
+		private final Node node;
+
+		PooledJedis(Node node, String uri)
+		{
+			super(uri);
+			this.node = node;
+		}
+
+		PooledJedis(Node node, String host, int port)
 		{
-			super(host);
+			super(host, port);
+			this.node = node;
 		}
 
 		@Override
 		public void close()
 		{
+			if (node.closed)
+			{
+				disconnect();
+				return;
+			}
+
 			if (!getClient().isBroken())
 			{
-				queue.offer(this);
+				node.queue.offer(this);
+				if (node.closed)
+				{
+					// the node was closed while this was being returned
+					node.drain();
+				}
 				return;
 			}
 
@@ -96,7 +549,7 @@ public class RedisPool
 				log.warn("unable to close broken jedis", e);
 			}
 
-			queue.offer(new PooledJedis(redisHost));
+			node.queue.offer(node.newPooled());
 		}
 	}
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.account;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import net.runelite.http.api.RuneLiteAPI;
+import net.runelite.http.service.config.ConfigController;
+import net.runelite.http.service.config.ConfigService;
+import net.runelite.http.service.util.redis.RedisPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+import redis.clients.jedis.Jedis;
+
+public class AuthFilterTest
+{
+	private SessionTokenService sessionTokenService;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	public void before()
+	{
+		// redis backed by a set, for the revocation list
+		Set<String> keys = new HashSet<>();
+		Jedis jedis = mock(Jedis.class);
+		when(jedis.setex(anyString(), anyInt(), anyString())).thenAnswer(invocation ->
+		{
+			keys.add(invocation.getArgument(0));
+			return "OK";
+		});
+		when(jedis.exists(anyString())).thenAnswer(invocation -> keys.contains(invocation.<String>getArgument(0)));
+		RedisPool redisPool = mock(RedisPool.class);
+		when(redisPool.execute(anyString(), any())).thenAnswer(invocation -> invocation.<Function<Jedis, ?>>getArgument(1).apply(jedis));
+
+		Sql2o sql2o = mock(Sql2o.class);
+		Connection con = mock(Connection.class);
+		when(sql2o.open()).thenReturn(con);
+		when(con.createQuery(anyString())).thenReturn(mock(Query.class, RETURNS_SELF));
+
+		ConfigService configService = mock(ConfigService.class);
+
+		sessionTokenService = new SessionTokenService(redisPool, "secret", 30, 5);
+		AuthFilter authFilter = new AuthFilter(sql2o, sessionTokenService);
+		AccountService accountService = new AccountService(sql2o, "id", "secret", "callback", "callback", "", authFilter, sessionTokenService, "localhost");
+		mockMvc = MockMvcBuilders.standaloneSetup(accountService, new ConfigController(configService, authFilter)).build();
+	}
+
+	@Test
+	public void testConfigAfterLogout() throws Exception
+	{
+		String token = sessionTokenService.issue(42, UUID.randomUUID());
+
+		mockMvc.perform(get("/config/v2").header(RuneLiteAPI.RUNELITE_AUTH, token))
+			.andExpect(status().isOk());
+
+		mockMvc.perform(get("/account/logout").header(RuneLiteAPI.RUNELITE_AUTH, token))
+			.andExpect(status().isOk());
+
+		mockMvc.perform(get("/config/v2").header(RuneLiteAPI.RUNELITE_AUTH, token))
+			.andExpect(status().isUnauthorized());
+	}
+}
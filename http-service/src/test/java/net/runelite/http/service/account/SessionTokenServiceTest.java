@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.account;
+
+import java.util.UUID;
+import net.runelite.http.service.account.beans.SessionEntry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SessionTokenServiceTest
+{
+	@Test
+	public void testVerify()
+	{
+		SessionTokenService tokens = new SessionTokenService(null, "secret", 30, 5);
+		UUID uuid = UUID.randomUUID();
+
+		String token = tokens.issue(42, uuid);
+		assertTrue(SessionTokenService.isToken(token));
+
+		SessionEntry session = tokens.verify(token);
+		assertNotNull(session);
+		assertEquals(42, session.getUser());
+		assertEquals(uuid, session.getUuid());
+		assertFalse(tokens.isExpired(session));
+	}
+
+	@Test
+	public void testTampered()
+	{
+		SessionTokenService tokens = new SessionTokenService(null, "secret", 30, 5);
+		String token = tokens.issue(42, UUID.randomUUID());
+
+		assertNull(tokens.verify(token.replace("v1.42.", "v1.43.")));
+		assertNull(new SessionTokenService(null, "other", 30, 5).verify(token));
+		assertNull(new SessionTokenService(null, "", 30, 5).verify(token));
+	}
+}
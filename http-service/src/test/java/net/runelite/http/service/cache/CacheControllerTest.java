@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.cache;
+
+import net.runelite.http.service.cache.beans.ArchiveEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(CacheController.class)
+@ActiveProfiles("test")
+public class CacheControllerTest
+{
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private CacheService cacheService;
+
+	@BeforeEach
+	public void before()
+	{
+		ArchiveEntry archiveEntry = new ArchiveEntry();
+		archiveEntry.setIndexId(2);
+		archiveEntry.setArchiveId(10);
+		archiveEntry.setCrc(0x1234);
+		archiveEntry.setRevision(5);
+		when(cacheService.findMostRecentArchive(2, 10)).thenReturn(archiveEntry);
+		when(cacheService.findArchiveByCrc(2, 10, 0x1234)).thenReturn(archiveEntry);
+		when(cacheService.getArchive(archiveEntry)).thenReturn(new byte[]{1, 2, 3});
+	}
+
+	@Test
+	public void testGetArchive() throws Exception
+	{
+		mockMvc.perform(get("/cache/2/10").param("crc", Integer.toString(0x1234)))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "\"1234-5\""))
+			.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+			.andExpect(content().bytes(new byte[]{1, 2, 3}));
+
+		// requests by crc don't look up the most recent archive
+		verify(cacheService, never()).findMostRecentArchive(anyInt(), anyInt());
+	}
+
+	@Test
+	public void testNotModified() throws Exception
+	{
+		mockMvc.perform(get("/cache/2/10").header(HttpHeaders.IF_NONE_MATCH, "\"1234-5\""))
+			.andExpect(status().isNotModified());
+
+		verify(cacheService, never()).getArchive(any(ArchiveEntry.class));
+	}
+
+	@Test
+	public void testCrcMismatch() throws Exception
+	{
+		mockMvc.perform(get("/cache/2/10").param("crc", "1"))
+			.andExpect(status().isNotFound());
+	}
+}
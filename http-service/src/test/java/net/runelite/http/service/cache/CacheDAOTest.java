@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.cache.fs.Container;
+import net.runelite.cache.fs.jagex.CompressionType;
+import net.runelite.http.service.cache.beans.ArchiveDataEntry;
+import net.runelite.http.service.cache.beans.ArchiveEntry;
+import net.runelite.http.service.cache.beans.CacheEntry;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+
+@Slf4j
+public class CacheDAOTest
+{
+	// roughly the size of the largest config archives
+	private static final int ARCHIVE_SIZE = 4 * 1024 * 1024;
+	// buffers, statement and result set overhead
+	private static final int ALLOCATION_SLACK = 1024 * 1024;
+
+	private Connection con;
+	private CacheDAO cacheDao;
+	private byte[] contents;
+
+	@BeforeEach
+	public void before()
+	{
+		Sql2o sql2o = new Sql2o("jdbc:h2:mem:cachedao;DB_CLOSE_DELAY=-1", "", "");
+		con = sql2o.open();
+		con.createQuery("create table data (id int primary key, data blob)")
+			.executeUpdate();
+		con.createQuery("create table cache (id int primary key, revision int, date timestamp)")
+			.executeUpdate();
+		con.createQuery("create table archive (id int primary key, index int, archive int, crc int, name int, revision int, data_id int)")
+			.executeUpdate();
+		con.createQuery("create table cache_archive (cache_id int, archive_id int)")
+			.executeUpdate();
+		cacheDao = new CacheDAO(con);
+
+		// compressible, but not trivially
+		Random random = new Random(42);
+		contents = new byte[ARCHIVE_SIZE];
+		for (int i = 0; i < contents.length; ++i)
+		{
+			contents[i] = (byte) ('a' + random.nextInt(16));
+		}
+	}
+
+	@AfterEach
+	public void after()
+	{
+		con.createQuery("drop table data")
+			.executeUpdate();
+		con.createQuery("drop table cache")
+			.executeUpdate();
+		con.createQuery("drop table archive")
+			.executeUpdate();
+		con.createQuery("drop table cache_archive")
+			.executeUpdate();
+		con.close();
+	}
+
+	@Test
+	public void testGzipContents() throws IOException
+	{
+		byte[] compressed = gzip(contents);
+		ArchiveEntry archive = insert(1, CompressionType.GZ, compressed, contents.length);
+
+		long start = allocatedBytes();
+		byte[] legacy = Container.decompress(cacheDao.getArchiveData(archive), null).data;
+		long legacyAllocated = allocatedBytes() - start;
+
+		start = allocatedBytes();
+		byte[] streamed = cacheDao.getArchiveContents(archive);
+		long streamedAllocated = allocatedBytes() - start;
+
+		assertArrayEquals(contents, legacy);
+		assertArrayEquals(contents, streamed);
+		log.info("{} byte archive, allocated {} bytes with getArchiveData, {} bytes with getArchiveContents",
+			contents.length, legacyAllocated, streamedAllocated);
+		// the streamed read allocates the output, and at most one copy of the blob if the driver buffers it,
+		// where the legacy read copies the blob and grows the output as it decompresses
+		assertTrue(streamedAllocated < contents.length + compressed.length + ALLOCATION_SLACK,
+			"streamed read allocated " + streamedAllocated + " bytes");
+		assertTrue(streamedAllocated < legacyAllocated,
+			"streamed read allocated " + streamedAllocated + " bytes, legacy read " + legacyAllocated);
+	}
+
+	@Test
+	public void testBzip2Contents() throws IOException
+	{
+		byte[] data = Arrays.copyOf(contents, 65536);
+		ArchiveEntry archive = insert(2, CompressionType.BZ2, bzip2(data), data.length);
+
+		assertArrayEquals(data, cacheDao.getArchiveContents(archive));
+	}
+
+	@Test
+	public void testMostRecentArchiveContents() throws IOException
+	{
+		byte[] old = Arrays.copyOf(contents, 1024);
+		byte[] idx = Arrays.copyOfRange(contents, 1024, 2048);
+		byte[] archive = Arrays.copyOfRange(contents, 2048, 4096);
+		insert(1, CompressionType.GZ, gzip(old), old.length);
+		insert(2, CompressionType.GZ, gzip(idx), idx.length);
+		insert(3, CompressionType.GZ, gzip(archive), archive.length);
+
+		insertCache(1, 1);
+		insertCache(2, 2);
+		// the old cache has a different version of the archive
+		insertArchive(1, 1, 2, 10, 1);
+		insertArchive(2, 2, 255, 2, 2);
+		insertArchive(3, 2, 2, 10, 3);
+
+		List<ArchiveDataEntry> archives = cacheDao.findMostRecentArchiveContents(Arrays.asList(
+			new ArchiveKey(255, 2),
+			new ArchiveKey(2, 10),
+			new ArchiveKey(2, 11)
+		));
+
+		assertEquals(2, archives.size());
+		archives.sort(Comparator.comparingInt(ArchiveDataEntry::getDataId));
+		assertEquals(255, archives.get(0).getIndexId());
+		assertArrayEquals(idx, archives.get(0).getData());
+		assertEquals(10, archives.get(1).getArchiveId());
+		assertArrayEquals(archive, archives.get(1).getData());
+	}
+
+	@Test
+	public void testArchivesWithData() throws IOException
+	{
+		byte[] old = Arrays.copyOf(contents, 1024);
+		byte[] archive = Arrays.copyOfRange(contents, 1024, 2048);
+		ArchiveEntry oldData = insert(1, CompressionType.GZ, gzip(old), old.length);
+		ArchiveEntry archiveData = insert(2, CompressionType.GZ, gzip(archive), archive.length);
+
+		insertCache(1, 1);
+		insertCache(2, 2);
+		insertArchive(1, 1, 2, 10, 1);
+		insertArchive(2, 2, 2, 10, 2);
+
+		CacheEntry cache = new CacheEntry();
+		cache.setId(1);
+		List<ArchiveDataEntry> archives = cacheDao.findArchivesWithData(cache, Arrays.asList(
+			new ArchiveKey(2, 10),
+			new ArchiveKey(2, 11)
+		));
+
+		// the archives of the requested cache are returned, with the container as stored
+		assertEquals(1, archives.size());
+		assertEquals(1, archives.get(0).getDataId());
+		assertArrayEquals(cacheDao.getArchiveData(oldData), archives.get(0).getData());
+
+		cache.setId(2);
+		archives = cacheDao.findArchivesWithData(cache, Collections.singletonList(new ArchiveKey(2, 10)));
+		assertEquals(1, archives.size());
+		assertArrayEquals(cacheDao.getArchiveData(archiveData), archives.get(0).getData());
+	}
+
+	private void insertCache(int id, int revision)
+	{
+		con.createQuery("insert into cache (id, revision, date) values (:id, :revision, current_timestamp)")
+			.addParameter("id", id)
+			.addParameter("revision", revision)
+			.executeUpdate();
+	}
+
+	private void insertArchive(int id, int cacheId, int index, int archive, int dataId)
+	{
+		con.createQuery("insert into archive (id, index, archive, crc, name, revision, data_id) values (:id, :index, :archive, 0, 0, 0, :data_id)")
+			.addParameter("id", id)
+			.addParameter("index", index)
+			.addParameter("archive", archive)
+			.addParameter("data_id", dataId)
+			.executeUpdate();
+		con.createQuery("insert into cache_archive (cache_id, archive_id) values (:cache_id, :archive_id)")
+			.addParameter("cache_id", cacheId)
+			.addParameter("archive_id", id)
+			.executeUpdate();
+	}
+
+	private ArchiveEntry insert(int id, int compression, byte[] compressed, int length) throws IOException
+	{
+		ByteArrayOutputStream container = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(container);
+		out.writeByte(compression);
+		out.writeInt(compressed.length);
+		out.writeInt(length);
+		out.write(compressed);
+
+		con.createQuery("insert into data (id, data) values (:id, :data)")
+			.addParameter("id", id)
+			.addParameter("data", container.toByteArray())
+			.executeUpdate();
+
+		ArchiveEntry archive = new ArchiveEntry();
+		archive.setDataId(id);
+		return archive;
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException
+	{
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bout))
+		{
+			out.write(data);
+		}
+		return bout.toByteArray();
+	}
+
+	private static byte[] bzip2(byte[] data) throws IOException
+	{
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try (OutputStream out = new BZip2CompressorOutputStream(bout, 1))
+		{
+			out.write(data);
+		}
+		// containers do not include the BZh1 stream header
+		byte[] compressed = bout.toByteArray();
+		return Arrays.copyOfRange(compressed, 4, compressed.length);
+	}
+
+	private static long allocatedBytes()
+	{
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
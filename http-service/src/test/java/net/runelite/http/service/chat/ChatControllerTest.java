@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import net.runelite.http.api.chat.PlayerStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(ChatController.class)
+@ActiveProfiles("test")
+public class ChatControllerTest
+{
+	@Autowired
+	private MockMvc mockMvc;
+
+	@MockBean
+	private ChatService chatService;
+
+	@Test
+	public void testPlayerDisabled() throws Exception
+	{
+		when(chatService.isPlayerHash()).thenReturn(false);
+
+		mockMvc.perform(get("/chat/player").param("name", "zezima"))
+			.andExpect(status().isNotFound());
+
+		verify(chatService, never()).getPlayer(anyString());
+	}
+
+	@Test
+	public void testPlayer() throws Exception
+	{
+		PlayerStats stats = new PlayerStats();
+		stats.getKc().put("zulrah", 100);
+		stats.setQp(300);
+		when(chatService.isPlayerHash()).thenReturn(true);
+		when(chatService.getPlayer("zezima")).thenReturn(stats);
+
+		mockMvc.perform(get("/chat/player").param("name", "zezima"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.kc.zulrah").value(100))
+			.andExpect(jsonPath("$.qp").value(300));
+	}
+
+	@Test
+	public void testPlayerNotFound() throws Exception
+	{
+		when(chatService.isPlayerHash()).thenReturn(true);
+
+		mockMvc.perform(get("/chat/player").param("name", "zezima"))
+			.andExpect(status().isNotFound());
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import com.google.common.collect.ImmutableMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+import net.runelite.http.api.chat.LayoutRoom;
+import net.runelite.http.api.chat.PlayerStats;
+import net.runelite.http.service.util.redis.HotKeyTracker;
+import net.runelite.http.service.util.redis.RedisPool;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+public class ChatServiceTest
+{
+	private static final String KC_KEY = "kc.zezima.zulrah";
+
+	private RedisPool redisPool;
+	private Pipeline pipeline;
+
+	@BeforeEach
+	public void before()
+	{
+		pipeline = mock(Pipeline.class);
+		Jedis jedis = mock(Jedis.class);
+		when(jedis.pipelined()).thenReturn(pipeline);
+
+		redisPool = mock(RedisPool.class);
+		when(redisPool.execute(anyString(), any())).thenAnswer(invocation -> invocation.<Function<Jedis, ?>>getArgument(1).apply(jedis));
+		when(redisPool.tag(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+		when(redisPool.subscribe(any(JedisPubSub.class), anyString())).thenReturn(() ->
+		{
+		});
+	}
+
+	private ChatService chatService(boolean playerHash)
+	{
+		return new ChatService(redisPool, 1024 * 1024, playerHash, 1024, 10, 5, new SimpleMeterRegistry(), mock(HotKeyTracker.class));
+	}
+
+	private JedisPubSub subscription()
+	{
+		ArgumentCaptor<JedisPubSub> pubSub = ArgumentCaptor.forClass(JedisPubSub.class);
+		verify(redisPool).subscribe(pubSub.capture(), eq("chat.invalidate"));
+		return pubSub.getValue();
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> Response<T> response(T value)
+	{
+		Response<T> response = mock(Response.class);
+		when(response.get()).thenReturn(value);
+		return response;
+	}
+
+	@Test
+	public void testNearCache()
+	{
+		ChatService chatService = chatService(false);
+		Response<String> kc = response("100");
+		Response<Long> ttl = response(120_000L);
+		when(pipeline.get(KC_KEY)).thenReturn(kc);
+		when(pipeline.pttl(KC_KEY)).thenReturn(ttl);
+
+		assertEquals(100, (int) chatService.getKc("zezima", "zulrah"));
+		assertEquals(100, (int) chatService.getKc("zezima", "zulrah"));
+
+		verify(pipeline, times(1)).get(KC_KEY);
+	}
+
+	@Test
+	public void testExpiry()
+	{
+		ChatService chatService = chatService(false);
+		Response<String> kc = response("100");
+		// the key expires in redis before the near-cache would expire it
+		Response<Long> ttl = response(0L);
+		when(pipeline.get(KC_KEY)).thenReturn(kc);
+		when(pipeline.pttl(KC_KEY)).thenReturn(ttl);
+
+		chatService.getKc("zezima", "zulrah");
+		chatService.getKc("zezima", "zulrah");
+
+		verify(pipeline, times(2)).get(KC_KEY);
+	}
+
+	@Test
+	public void testInvalidation()
+	{
+		ChatService chatService = chatService(false);
+		JedisPubSub pubSub = subscription();
+		Response<String> kc = response("100");
+		Response<Long> ttl = response(120_000L);
+		when(pipeline.get(KC_KEY)).thenReturn(kc);
+		when(pipeline.pttl(KC_KEY)).thenReturn(ttl);
+
+		chatService.getKc("zezima", "zulrah");
+		pubSub.onMessage("chat.invalidate", "node kc.zezima.vorkath");
+		chatService.getKc("zezima", "zulrah");
+		verify(pipeline, times(1)).get(KC_KEY);
+
+		pubSub.onMessage("chat.invalidate", "node " + KC_KEY);
+		chatService.getKc("zezima", "zulrah");
+		verify(pipeline, times(2)).get(KC_KEY);
+	}
+
+	@Test
+	public void testInvalidatedDuringLookup()
+	{
+		ChatService chatService = chatService(false);
+		JedisPubSub pubSub = subscription();
+		Response<String> kc = response("100");
+		Response<Long> ttl = response(120_000L);
+		when(pipeline.get(KC_KEY)).thenReturn(kc);
+		when(pipeline.pttl(KC_KEY)).thenReturn(ttl);
+		// another node writes the key after it has been read, but before the lookup finishes
+		doAnswer(invocation ->
+		{
+			pubSub.onMessage("chat.invalidate", "node " + KC_KEY);
+			return null;
+		}).when(pipeline).sync();
+
+		chatService.getKc("zezima", "zulrah");
+		chatService.getKc("zezima", "zulrah");
+
+		// the value read before the write wasn't cached
+		verify(pipeline, times(2)).get(KC_KEY);
+	}
+
+	@Test
+	public void testHotMissing()
+	{
+		HotKeyTracker hotKeyTracker = mock(HotKeyTracker.class);
+		when(hotKeyTracker.isHot(anyInt())).thenReturn(true);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		ChatService chatService = new ChatService(redisPool, 1024 * 1024, false, 1024, 10, 5, meterRegistry, hotKeyTracker);
+		JedisPubSub pubSub = subscription();
+		Response<String> kc = response(null);
+		Response<Long> ttl = response(-2L);
+		when(pipeline.get(KC_KEY)).thenReturn(kc);
+		when(pipeline.pttl(KC_KEY)).thenReturn(ttl);
+		// the key is written by another node while the first lookup is in flight
+		doAnswer(invocation ->
+		{
+			pubSub.onMessage("chat.invalidate", "node " + KC_KEY);
+			return null;
+		}).doNothing().when(pipeline).sync();
+
+		assertNull(chatService.getKc("zezima", "zulrah"));
+		assertEquals(0.0, meterRegistry.counter("runelite chat hot key promoted").count());
+
+		// the second lookup caches that the key doesn't exist, so the third doesn't go to redis
+		assertNull(chatService.getKc("zezima", "zulrah"));
+		assertNull(chatService.getKc("zezima", "zulrah"));
+		verify(pipeline, times(2)).get(KC_KEY);
+		assertEquals(1.0, meterRegistry.counter("runelite chat hot key promoted").count());
+	}
+
+	@Test
+	public void testWriteCached()
+	{
+		ChatService chatService = chatService(false);
+
+		chatService.setKc("zezima", "zulrah", 100);
+		assertEquals(100, (int) chatService.getKc("zezima", "zulrah"));
+
+		verify(pipeline).setex(KC_KEY, 120, "100");
+		verify(pipeline).publish(eq("chat.invalidate"), anyString());
+		verify(pipeline, never()).get(KC_KEY);
+	}
+
+	@Test
+	public void testPlayerHashWrite()
+	{
+		ChatService chatService = chatService(true);
+		long start = System.currentTimeMillis();
+
+		chatService.setKc("zezima", "zulrah", 100);
+
+		ArgumentCaptor<String> value = ArgumentCaptor.forClass(String.class);
+		verify(pipeline).hset(eq("player.zezima"), eq("kc.zulrah"), value.capture());
+		verify(pipeline).expire("player.zezima", 120);
+		// the field is stored with the time it was written
+		String[] parts = value.getValue().split(":", 2);
+		assertTrue(Long.parseLong(parts[0]) >= start);
+		assertEquals("100", parts[1]);
+	}
+
+	@Test
+	public void testRemoteWrite()
+	{
+		ChatService chatService = chatService(false);
+		JedisPubSub pubSub = subscription();
+
+		chatService.setKc("zezima", "zulrah", 100);
+		chatService.setKc("zezima", "zulrah", 100);
+		verify(pipeline, times(1)).setex(KC_KEY, 120, "100");
+
+		// another node wrote the key, so writing the earlier value again must reach redis
+		pubSub.onMessage("chat.invalidate", "node " + KC_KEY);
+		chatService.setKc("zezima", "zulrah", 100);
+		verify(pipeline, times(2)).setex(KC_KEY, 120, "100");
+	}
+
+	@Test
+	public void testPlayerHashFields()
+	{
+		ChatService chatService = chatService(true);
+		JedisPubSub pubSub = subscription();
+
+		// each field is filtered on its own, so a write to one field doesn't let another's through
+		chatService.setKc("zezima", "zulrah", 100);
+		chatService.setKc("zezima", "vorkath", 50);
+		chatService.setKc("zezima", "zulrah", 100);
+		verify(pipeline, times(1)).hset(eq("player.zezima"), eq("kc.zulrah"), anyString());
+
+		pubSub.onMessage("chat.invalidate", "node player.zezima");
+		chatService.setKc("zezima", "zulrah", 100);
+		verify(pipeline, times(2)).hset(eq("player.zezima"), eq("kc.zulrah"), anyString());
+	}
+
+	@Test
+	public void testPlayerHashRead()
+	{
+		ChatService chatService = chatService(true);
+		long now = System.currentTimeMillis();
+		Response<Map<String, String>> hash = response(ImmutableMap.of(
+			"kc.zulrah", PlayerHash.encode("100", now),
+			"pb.zulrah", PlayerHash.encode("62.4", now),
+			"layout", PlayerHash.encode("START END", now),
+			// written longer ago than the ttl
+			"qp", PlayerHash.encode("300", now - 120_000L)
+		));
+		Response<Long> ttl = response(120_000L);
+		when(pipeline.hgetAll("player.zezima")).thenReturn(hash);
+		when(pipeline.pttl("player.zezima")).thenReturn(ttl);
+
+		PlayerStats stats = chatService.getPlayer("zezima");
+		assertEquals(Collections.singletonMap("zulrah", 100), stats.getKc());
+		assertEquals(Collections.singletonMap("zulrah", 62.4), stats.getPb());
+		assertArrayEquals(new LayoutRoom[]{LayoutRoom.START, LayoutRoom.END}, stats.getLayout());
+		assertNull(stats.getQp());
+
+		// single stats are read from the same cached hash
+		assertEquals(100, (int) chatService.getKc("zezima", "zulrah"));
+		assertNull(chatService.getQp("zezima"));
+		verify(pipeline, times(1)).hgetAll("player.zezima");
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ChatWriteFilterTest
+{
+	@Test
+	public void testDuplicate()
+	{
+		ChatWriteFilter filter = new ChatWriteFilter(1024, 10);
+
+		assertFalse(filter.isDuplicate("layout.zezima", "1 2 3", 1000));
+		filter.record("layout.zezima", "1 2 3", 1000);
+		assertTrue(filter.isDuplicate("layout.zezima", "1 2 3", 1005));
+		// a different value or key is written
+		assertFalse(filter.isDuplicate("layout.zezima", "1 2 4", 1006));
+		assertFalse(filter.isDuplicate("layout.lynx", "1 2 3", 1006));
+	}
+
+	@Test
+	public void testWindow()
+	{
+		ChatWriteFilter filter = new ChatWriteFilter(1024, 10);
+
+		filter.record("kc.zezima.zulrah", "100", 1000);
+		assertTrue(filter.isDuplicate("kc.zezima.zulrah", "100", 1009));
+		// the window has passed, so the write refreshes the ttl
+		assertFalse(filter.isDuplicate("kc.zezima.zulrah", "100", 1010));
+		filter.record("kc.zezima.zulrah", "100", 1010);
+		assertTrue(filter.isDuplicate("kc.zezima.zulrah", "100", 1011));
+	}
+
+	@Test
+	public void testTimeWrap()
+	{
+		ChatWriteFilter filter = new ChatWriteFilter(1024, 10);
+		long wrap = 1L << 24;
+
+		filter.record("qp.zezima", "300", wrap - 2);
+		assertTrue(filter.isDuplicate("qp.zezima", "300", wrap + 2));
+	}
+
+	@Test
+	public void testChangedBack()
+	{
+		ChatWriteFilter filter = new ChatWriteFilter(1024, 10);
+
+		filter.record("qp.zezima", "300", 1000);
+		filter.record("qp.zezima", "301", 1001);
+		// redis holds 301, so writing 300 again must not be skipped
+		assertFalse(filter.isDuplicate("qp.zezima", "300", 1002));
+		assertTrue(filter.isDuplicate("qp.zezima", "301", 1002));
+	}
+
+	@Test
+	public void testUnrecorded()
+	{
+		ChatWriteFilter filter = new ChatWriteFilter(1024, 10);
+
+		// a write which failed is never recorded, so the retry goes through
+		assertFalse(filter.isDuplicate("gc.zezima", "5", 1000));
+		assertFalse(filter.isDuplicate("gc.zezima", "5", 1001));
+	}
+
+	@Test
+	public void testFields()
+	{
+		ChatWriteFilter filter = new ChatWriteFilter(1024, 10);
+
+		filter.record("player.zezima", "kc.zulrah", "100", 1000);
+		filter.record("player.zezima", "kc.vorkath", "50", 1000);
+		assertTrue(filter.isDuplicate("player.zezima", "kc.zulrah", "100", 1001));
+		assertTrue(filter.isDuplicate("player.zezima", "kc.vorkath", "50", 1001));
+		// the same value in another field is written
+		assertFalse(filter.isDuplicate("player.zezima", "kc.vorkath", "100", 1001));
+	}
+
+	@Test
+	public void testClear()
+	{
+		ChatWriteFilter filter = new ChatWriteFilter(1024, 10);
+
+		filter.record("player.zezima", "kc.zulrah", "100", 1000);
+		filter.record("player.zezima", "qp", "300", 1000);
+		filter.record("qp.lynx", "300", 1000);
+
+		// a key written by another node is cleared along with all of its fields
+		filter.clear("player.zezima");
+		assertFalse(filter.isDuplicate("player.zezima", "kc.zulrah", "100", 1001));
+		assertFalse(filter.isDuplicate("player.zezima", "qp", "300", 1001));
+		assertTrue(filter.isDuplicate("qp.lynx", "300", 1001));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+@Slf4j
+public class PetListCodecTest
+{
+	@Test
+	public void testRoundTrip()
+	{
+		int[] pets = PetListCodec.normalize(new int[]{13262, 12921, 8336, 12921, 21291, 0, 127, 128, Integer.MAX_VALUE});
+		assertArrayEquals(new int[]{0, 127, 128, 8336, 12921, 13262, 21291, Integer.MAX_VALUE}, pets);
+		assertArrayEquals(pets, PetListCodec.decode(PetListCodec.encode(pets)));
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertEquals(0, PetListCodec.encode(new int[0]).length);
+		assertEquals(0, PetListCodec.decode(new byte[0]).length);
+	}
+
+	@Test
+	public void testSize()
+	{
+		// a full list of pet item ids, compared to the members of the former set of decimal strings
+		Random random = new Random(42);
+		int[] pets = PetListCodec.normalize(random.ints(256, 8000, 30000).toArray());
+		byte[] encoded = PetListCodec.encode(pets);
+
+		int setBytes = 0;
+		for (int pet : pets)
+		{
+			setBytes += Integer.toString(pet).length();
+		}
+
+		log.info("{} pets encoded in {} bytes, {} bytes as set members", pets.length, encoded.length, setBytes);
+		assertTrue(encoded.length < setBytes / 2);
+		assertArrayEquals(pets, PetListCodec.decode(encoded));
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.chat;
+
+import com.google.common.collect.ImmutableMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+public class PlayerHashTest
+{
+	@Test
+	public void testTimestamps()
+	{
+		PlayerHash hash = new PlayerHash(ImmutableMap.of(
+			"kc.zulrah", PlayerHash.encode("100", 1000L),
+			"qp", PlayerHash.encode("300", 5000L),
+			"gc", "10"
+		));
+
+		assertEquals("100", hash.get("kc.zulrah", 1000L + 119_999L, 120_000L));
+		// each field expires on its own
+		assertNull(hash.get("kc.zulrah", 1000L + 120_000L, 120_000L));
+		assertEquals("300", hash.get("qp", 1000L + 120_000L, 120_000L));
+		// fields without a timestamp are ignored
+		assertNull(hash.get("gc", 1000L, 120_000L));
+		assertNull(hash.get("pb.zulrah", 1000L, 120_000L));
+	}
+
+	@Test
+	public void testEncode()
+	{
+		assertEquals("1000:1 2 3", PlayerHash.encode("1 2 3", 1000L));
+		// values may contain the separator
+		PlayerHash hash = new PlayerHash(ImmutableMap.of("task", PlayerHash.encode("{\"a\":\"b:c\"}", 1000L)));
+		assertEquals("{\"a\":\"b:c\"}", hash.get("task", 1000L, 120_000L));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import com.google.common.base.Strings;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+import java.util.Arrays;
+import java.util.Collections;
+import net.runelite.http.api.config.ConfigPatch;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConfigChangeLogTest
+{
+	private MongoCollection<Document> collection;
+	private ConfigChangeLog changeLog;
+
+	@BeforeEach
+	public void before()
+	{
+		collection = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+		changeLog = new ConfigChangeLog(collection);
+	}
+
+	private static Document change(long rev, String key, String value)
+	{
+		return new Document("rev", rev)
+			.append("edit", value == null ? Collections.emptyList() : Collections.singletonList(new Document("k", key).append("v", value)))
+			.append("unset", value == null ? Collections.singletonList(key) : Collections.emptyList());
+	}
+
+	private void log(Document... changes)
+	{
+		when(collection.find(any(Bson.class)).first()).thenReturn(new Document("changes", Arrays.asList(changes)));
+	}
+
+	@Test
+	public void testChangesSince()
+	{
+		log(change(4L, "group.a", "1"), change(5L, "group.b", "2"), change(6L, "group.a", null), change(7L, "group.c", "3"));
+
+		ConfigPatch patch = changeLog.changesSince(1, 0L, 4L, 6L);
+		assertNotNull(patch);
+		assertEquals(Collections.singletonMap("group.b", "2"), patch.getEdit());
+		assertEquals(Collections.singleton("group.a"), patch.getUnset());
+	}
+
+	@Test
+	public void testGap()
+	{
+		// rev 6 was not logged, eg. it was written by a v2 patch
+		log(change(4L, "group.a", "1"), change(5L, "group.b", "2"), change(7L, "group.c", "3"));
+
+		assertNotNull(changeLog.changesSince(1, 0L, 3L, 5L));
+		assertNull(changeLog.changesSince(1, 0L, 4L, 7L));
+		// the log doesn't reach back far enough
+		assertNull(changeLog.changesSince(1, 0L, 2L, 5L));
+	}
+
+	@Test
+	public void testMaxChanges()
+	{
+		changeLog.append(1, 0L, 1L, Collections.singletonMap("group.a", "1"), Collections.emptyList());
+
+		ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+		verify(collection).updateOne(any(Bson.class), update.capture(), any(UpdateOptions.class));
+		BsonDocument push = update.getValue().toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry())
+			.getDocument("$push")
+			.getDocument("changes");
+		// the log keeps only the last 32 revs, sorted by rev
+		assertEquals(-32, push.getInt32("$slice").getValue());
+		assertEquals(1, push.getDocument("$sort").getInt32("rev").getValue());
+	}
+
+	@Test
+	public void testMaxChangeSize()
+	{
+		String value = Strings.repeat("a", 32768);
+		changeLog.append(1, 0L, 1L, Collections.singletonMap("group.a", value), Collections.emptyList());
+		// over 64 KiB in total, so the rev is left out of the log
+		changeLog.append(1, 0L, 2L, Collections.singletonMap("group.a", value + value), Collections.singletonList("group.c"));
+
+		verify(collection, times(1)).updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class));
+	}
+}
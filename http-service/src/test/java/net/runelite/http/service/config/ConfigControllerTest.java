@@ -26,28 +26,37 @@ package net.runelite.http.service.config;
 
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import net.runelite.http.api.config.ConfigPatch;
+import net.runelite.http.api.config.Configuration;
 import net.runelite.http.service.account.AuthFilter;
 import net.runelite.http.service.account.beans.SessionEntry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -84,4 +93,49 @@ public class ConfigControllerTest
 
 		verify(configService).patchV2(anyInt(), eq(patch));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testGetNotModified() throws Exception
+	{
+		when(configService.getRevV3(anyInt(), eq(1L))).thenReturn(5L);
+
+		mockMvc.perform(get("/config/v3/1")
+			.header(HttpHeaders.IF_NONE_MATCH, "\"5\""))
+			.andExpect(status().isNotModified());
+
+		verify(configService, never()).getV3Body(anyInt(), anyLong());
+	}
+
+	@Test
+	public void testGetModified() throws Exception
+	{
+		Configuration configuration = new Configuration();
+		configuration.setRev(6L);
+		when(configService.getRevV3(anyInt(), eq(1L))).thenReturn(6L);
+		when(configService.getV3Body(anyInt(), eq(1L))).thenReturn(ConfigurationBody.of(configuration));
+
+		mockMvc.perform(get("/config/v3/1")
+			.header(HttpHeaders.IF_NONE_MATCH, "\"5\""))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "\"6\""));
+
+		// the rev is only looked up once
+		verify(configService).getRevV3(anyInt(), eq(1L));
+		verify(configService).getV3Body(anyInt(), eq(1L));
+	}
+
+	@Test
+	public void testGetGroups() throws Exception
+	{
+		Configuration configuration = new Configuration();
+		configuration.setRev(3L);
+		configuration.setConfig(Collections.singletonMap("a.key", "value"));
+		when(configService.getV3Body(anyInt(), eq(1L), anyCollection())).thenReturn(ConfigurationBody.of(configuration));
+
+		mockMvc.perform(get("/config/v3/1?groups=a,b"))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+		verify(configService).getV3Body(anyInt(), eq(1L), eq(Arrays.asList("a", "b")));
+	}
+}
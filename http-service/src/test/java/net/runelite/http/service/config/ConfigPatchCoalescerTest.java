@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.runelite.http.api.config.ConfigPatch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class ConfigPatchCoalescerTest
+{
+	@Test
+	public void testCoalesce() throws InterruptedException
+	{
+		AtomicLong rev = new AtomicLong();
+		List<ConfigPatch> writes = Collections.synchronizedList(new ArrayList<>());
+		ConfigPatchCoalescer coalescer = new ConfigPatchCoalescer((key, patch) ->
+		{
+			writes.add(patch);
+			return rev.incrementAndGet();
+		}, 1000, 1);
+
+		ConfigKey key = new ConfigKey(1, 0L);
+
+		ConfigPatch first = new ConfigPatch();
+		first.getEdit().put("group.a", "1");
+		first.getEdit().put("group.b", "1");
+		ConfigPatch second = new ConfigPatch();
+		second.getEdit().put("group.a", "2");
+		second.getUnset().add("group.b");
+
+		CompletableFuture<Long> rev1 = CompletableFuture.supplyAsync(() -> coalescer.write(key, first));
+		Thread.sleep(100);
+		CompletableFuture<Long> rev2 = CompletableFuture.supplyAsync(() -> coalescer.write(key, second));
+
+		assertEquals(1L, (long) rev1.join());
+		assertEquals(1L, (long) rev2.join());
+		assertEquals(1, writes.size());
+
+		ConfigPatch written = writes.get(0);
+		assertEquals(Collections.singletonMap("group.a", "2"), written.getEdit());
+		assertEquals(Collections.singleton("group.b"), written.getUnset());
+
+		coalescer.shutdown();
+	}
+
+	@Test
+	public void testShutdown() throws Exception
+	{
+		AtomicLong rev = new AtomicLong();
+		ConfigPatchCoalescer coalescer = new ConfigPatchCoalescer((key, patch) -> rev.incrementAndGet(), 60_000, 1);
+
+		// writes racing the shutdown must all be written, without waiting for the window
+		List<CompletableFuture<Long>> revs = new ArrayList<>();
+		for (int i = 0; i < 64; ++i)
+		{
+			ConfigKey key = new ConfigKey(i, 0L);
+			ConfigPatch patch = new ConfigPatch();
+			patch.getEdit().put("group.a", "1");
+			revs.add(CompletableFuture.supplyAsync(() -> coalescer.write(key, patch)));
+		}
+		coalescer.shutdown();
+
+		for (CompletableFuture<Long> r : revs)
+		{
+			r.get(5, TimeUnit.SECONDS);
+		}
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.a", "2");
+		assertEquals(rev.get() + 1, (long) coalescer.write(new ConfigKey(0, 0L), patch));
+	}
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import com.google.common.base.Strings;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import net.runelite.http.api.config.ConfigChanges;
+import net.runelite.http.api.config.ConfigPatch;
+import net.runelite.http.api.config.Configuration;
+import net.runelite.http.api.config.Profile;
+import net.runelite.http.service.util.redis.RedisPool;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.conversions.Bson;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+public class ConfigServiceTest
+{
+	private MongoCollection<Document> collection;
+	private MongoCollection<Document> changesCollection;
+	private MongoCollection<Document> migrationCollection;
+	private MongoCollection<RawBsonDocument> rawCollection;
+	private FindIterable<RawBsonDocument> find;
+	private RedisPool redisPool;
+	private Jedis jedis;
+
+	@BeforeEach
+	public void before()
+	{
+		collection = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+		changesCollection = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+		migrationCollection = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+		rawCollection = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+		find = mock(FindIterable.class, RETURNS_DEEP_STUBS);
+		when(collection.withDocumentClass(RawBsonDocument.class)).thenReturn(rawCollection);
+		when(rawCollection.find(any(Bson.class))).thenReturn(find);
+
+		jedis = mock(Jedis.class);
+		redisPool = mock(RedisPool.class);
+		when(redisPool.getResource()).thenReturn(jedis);
+		when(redisPool.getResource(anyString())).thenReturn(jedis);
+		when(redisPool.subscribe(any(JedisPubSub.class), anyString())).thenReturn(() ->
+		{
+		});
+	}
+
+	private ConfigService configService(long cacheBytes)
+	{
+		return configService(cacheBytes, 8388608L);
+	}
+
+	private ConfigService configService(long cacheBytes, long maxProfileBytes)
+	{
+		MongoDatabase database = mock(MongoDatabase.class);
+		when(database.getCollection("config")).thenReturn(collection);
+		when(database.getCollection("config_changes")).thenReturn(changesCollection);
+		when(database.getCollection("config_migration")).thenReturn(migrationCollection);
+		MongoClient mongoClient = mock(MongoClient.class);
+		when(mongoClient.getDatabase(anyString())).thenReturn(database);
+
+		return new ConfigService(mongoClient, "runelite", cacheBytes, 600, 0L, 1, maxProfileBytes, new SimpleMeterRegistry(), redisPool);
+	}
+
+	private static RawBsonDocument profile(long rev, String value)
+	{
+		Document document = new Document("_userId", 1)
+			.append("_profile", new Document("id", 0L).append("name", "default").append("rev", rev).append("size", 64L))
+			.append("group", new Document("key", value));
+		return new RawBsonDocument(document, new DocumentCodec());
+	}
+
+	@Test
+	public void testCacheHit()
+	{
+		ConfigService configService = configService(1024L);
+		when(find.first()).thenReturn(profile(1L, "value"));
+
+		Configuration configuration = configService.getV3(1, 0L);
+		assertEquals("value", configuration.getConfig().get("group.key"));
+		assertEquals(configuration, configService.getV3(1, 0L));
+		assertEquals(1L, (long) configService.getRevV3(1, 0L));
+
+		// the second fetch and the rev lookup are served from the cache without going to mongo
+		verify(rawCollection, times(1)).find(any(Bson.class));
+	}
+
+	@Test
+	public void testPatchInvalidates()
+	{
+		ConfigService configService = configService(1024L);
+		when(find.first()).thenReturn(profile(1L, "value"));
+		when(collection.find(any(Bson.class)).projection(any(Bson.class)).first())
+			.thenReturn(new Document("_profile", new Document("rev", 1L).append("size", 64L)));
+		when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class)))
+			.thenReturn(UpdateResult.acknowledged(1L, 1L, null));
+
+		configService.getV3(1, 0L);
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.key", "value2");
+		configService.patchV3(1, 0L, patch);
+		verify(jedis).publish(eq("config.invalidate"), anyString());
+
+		when(find.first()).thenReturn(profile(2L, "value2"));
+		assertEquals("value2", configService.getV3(1, 0L).getConfig().get("group.key"));
+		verify(rawCollection, times(2)).find(any(Bson.class));
+	}
+
+	@Test
+	public void testRemoteInvalidation()
+	{
+		ConfigService configService = configService(1024L);
+		ArgumentCaptor<JedisPubSub> pubSub = ArgumentCaptor.forClass(JedisPubSub.class);
+		verify(redisPool).subscribe(pubSub.capture(), eq("config.invalidate"));
+		when(find.first()).thenReturn(profile(1L, "value"));
+
+		configService.getV3(1, 0L);
+
+		// another user's profile being written doesn't drop this one
+		pubSub.getValue().onMessage("config.invalidate", "node 2 0");
+		configService.getV3(1, 0L);
+		verify(rawCollection, times(1)).find(any(Bson.class));
+
+		pubSub.getValue().onMessage("config.invalidate", "node 1 0");
+		configService.getV3(1, 0L);
+		verify(rawCollection, times(2)).find(any(Bson.class));
+	}
+
+	@Test
+	public void testChangesFallback()
+	{
+		ConfigService configService = configService(1024L);
+		when(find.projection(any(Bson.class)).first()).thenReturn(profile(3L, "value"));
+		when(find.first()).thenReturn(profile(3L, "value"));
+		// rev 3 was written by a v2 patch, which isn't logged
+		when(changesCollection.find(any(Bson.class)).first()).thenReturn(new Document("changes", Collections.singletonList(
+			new Document("rev", 2L)
+				.append("edit", Collections.singletonList(new Document("k", "group.key").append("v", "old")))
+				.append("unset", Collections.emptyList()))));
+
+		ConfigChanges changes = configService.getChangesV3(1, 0L, 1L);
+		assertTrue(changes.isFull());
+		assertEquals(3L, changes.getRev());
+		assertEquals(Collections.singletonMap("group.key", "value"), changes.getEdit());
+	}
+
+	@Test
+	public void testLargeProfileCached() throws Exception
+	{
+		ConfigService configService = configService(1048576L);
+		String value = Strings.repeat("a", 200_000);
+		when(find.first()).thenReturn(profile(1L, value));
+
+		StringWriter first = new StringWriter();
+		configService.getV3Body(1, 0L).writeTo(first);
+		StringWriter second = new StringWriter();
+		configService.getV3Body(1, 0L).writeTo(second);
+
+		// the raw document is cached and streamed again
+		verify(rawCollection, times(1)).find(any(Bson.class));
+		assertEquals(first.toString(), second.toString());
+		assertEquals(value, configService.getV3(1, 0L).getConfig().get("group.key"));
+		assertEquals(1L, (long) configService.getRevV3(1, 0L));
+	}
+
+	@Test
+	public void testMigrateUser()
+	{
+		ConfigService configService = configService(1024L);
+		// the user still has a v2 profile, and no default profile
+		when(collection.updateOne(any(Bson.class), any(Bson.class)).getMatchedCount()).thenReturn(1L);
+		when(collection.find(any(Bson.class)).first()).thenReturn(new Document("_id", 1)
+			.append("_userId", 1)
+			.append("group", new Document("key", "a").append("rsprofile:abc:key", "b")), (Document) null);
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.key", "c");
+		configService.patchV2(1, patch);
+
+		// the patch is written to the v2 profile, and the user is migrated later
+		verify(collection, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+		configService.migrateQueued();
+
+		ArgumentCaptor<List<WriteModel<Document>>> writes = ArgumentCaptor.forClass(List.class);
+		verify(collection).bulkWrite(writes.capture(), any(BulkWriteOptions.class));
+		List<WriteModel<Document>> migration = writes.getValue();
+
+		BsonDocument rsProfile = render(((UpdateOneModel<Document>) migration.get(0)).getUpdate());
+		assertEquals("b", rsProfile.getDocument("$set").getString("group.rsprofile:abc:key").getValue());
+
+		BsonDocument defaultProfile = render(((UpdateOneModel<Document>) migration.get(1)).getUpdate());
+		assertTrue(defaultProfile.getDocument("$set").getBoolean("_profile.migrated").getValue());
+		assertEquals(Collections.singleton("group.rsprofile:abc:key"), defaultProfile.getDocument("$unset").keySet());
+	}
+
+	@Test
+	public void testMigrateExistingDefault()
+	{
+		ConfigService configService = configService(1024L);
+		// a v3 write created the default profile before the user was migrated
+		when(collection.updateOne(any(Bson.class), any(Bson.class)).getMatchedCount()).thenReturn(1L);
+		when(collection.find(any(Bson.class)).first()).thenReturn(
+			new Document("_id", 1)
+				.append("_userId", 1)
+				.append("group", new Document("key", "a").append("other", "b")),
+			new Document("_id", 2)
+				.append("_userId", 1)
+				.append("_profile", new Document("id", 0L).append("rev", 1L))
+				.append("group", new Document("key", "c")));
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.new", "d");
+		configService.patchV2(1, patch);
+		configService.migrateQueued();
+
+		ArgumentCaptor<List<WriteModel<Document>>> writes = ArgumentCaptor.forClass(List.class);
+		verify(collection).bulkWrite(writes.capture(), any(BulkWriteOptions.class));
+		List<WriteModel<Document>> migration = writes.getValue();
+
+		// only the entries the default profile doesn't have are copied, and the v2 profile is removed
+		BsonDocument defaultProfile = render(((UpdateOneModel<Document>) migration.get(1)).getUpdate());
+		assertEquals("b", defaultProfile.getDocument("$set").getString("group.other").getValue());
+		assertFalse(defaultProfile.getDocument("$set").containsKey("group.key"));
+		assertTrue(migration.get(2) instanceof DeleteOneModel);
+	}
+
+	@Test
+	public void testUnmigratedProfiles()
+	{
+		ConfigService configService = configService(1024L);
+		// only the v2 profile exists
+		MongoCursor<Document> cursor = mock(MongoCursor.class);
+		when(cursor.hasNext()).thenReturn(true, false);
+		when(cursor.next()).thenReturn(new Document("_id", 1));
+		when(collection.find(any(Bson.class)).projection(any(Bson.class)).iterator()).thenReturn(cursor);
+		Document v2 = new Document("_userId", 1)
+			.append("group", new Document("key", "a").append("rsprofile:abc:key", "b"));
+		when(find.first()).thenReturn(null, new RawBsonDocument(v2, new DocumentCodec()));
+
+		List<Profile> profiles = configService.listProfiles(1);
+		assertEquals(Arrays.asList(0L, -1L), Arrays.asList(profiles.get(0).getId(), profiles.get(1).getId()));
+
+		// served from the v2 profile, without migrating it as part of the request
+		assertEquals(Collections.singletonMap("group.rsprofile.abc.key", "b"), configService.getV3(1, -1L).getConfig());
+		verify(collection, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+	}
+
+	@Test
+	public void testMigratedUser()
+	{
+		ConfigService configService = configService(1024L);
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.key", "c");
+		configService.patchV2(1, patch);
+		configService.patchV2(1, patch);
+
+		// the v2 profile is only looked for once, and nothing is read
+		verify(collection, times(1)).updateOne(any(Bson.class), any(Bson.class));
+		verify(collection, never()).find(any(Bson.class));
+		verify(collection, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+	}
+
+	@Test
+	public void testMigrationLocked()
+	{
+		ConfigService configService = configService(1024L);
+		when(jedis.set(eq("config.migration.lock"), anyString(), eq("NX"), eq("EX"), anyLong())).thenReturn(null);
+
+		configService.migrateV2Profiles();
+
+		verify(collection, never()).find(any(Bson.class));
+	}
+
+	@Test
+	public void testMigrationResumes()
+	{
+		ConfigService configService = configService(1024L);
+		when(jedis.set(eq("config.migration.lock"), anyString(), eq("NX"), eq("EX"), anyLong())).thenReturn("OK");
+		when(migrationCollection.find(any(Bson.class)).first()).thenReturn(new Document("_id", "v2").append("lastId", 5));
+
+		configService.migrateV2Profiles();
+
+		// carries on from where the last node stopped, and with nothing left the migration is complete
+		ArgumentCaptor<Bson> filter = ArgumentCaptor.forClass(Bson.class);
+		verify(collection).find(filter.capture());
+		assertEquals(5, render(filter.getValue()).getDocument("_id").getInt32("$gt").getValue());
+		ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+		verify(migrationCollection).updateOne(any(Bson.class), update.capture(), any(UpdateOptions.class));
+		assertTrue(render(update.getValue()).getDocument("$set").getBoolean("complete").getValue());
+	}
+
+	@Test
+	public void testMerge()
+	{
+		Document to = new Document("group", new Document("key", "a")
+			.append("nested", new Document("x", "1").append("y", "2")));
+		RawConfigReader.merge(new Document("group", new Document("key", "b")
+			.append("nested", new Document("y", "3").append("z", "4")))
+			.append("other", new Document("key", "c")), to);
+
+		// nested documents are merged rather than replaced
+		assertEquals(new Document("group", new Document("key", "b")
+				.append("nested", new Document("x", "1").append("y", "3").append("z", "4")))
+				.append("other", new Document("key", "c")),
+			to);
+	}
+
+	@Test
+	public void testGetV2()
+	{
+		ConfigService configService = configService(1024L);
+		// returned out of order, the $rsprofile profile must still be merged last
+		when(find.projection(any(Bson.class)).into(any())).thenReturn(new ArrayList<>(Arrays.asList(
+			raw(new Document("_profile", new Document("id", -1L))
+				.append("group", new Document("key", "rs"))),
+			raw(new Document("_profile", new Document("id", 0L))
+				.append("group", new Document("key", "default").append("nested", new Document("y", "2")).append("removed", null))),
+			raw(new Document("group", new Document("key", "v2").append("nested", new Document("x", "1")).append("old", "v").append("removed", "v")))
+		)));
+
+		Map<String, String> config = configService.getV2(1);
+
+		assertEquals("rs", config.get("group.key"));
+		assertEquals("v", config.get("group.old"));
+		// legacy document values are merged, and null values remove the entry
+		assertEquals("{\"x\":\"1\",\"y\":\"2\"}", config.get("group.nested"));
+		assertFalse(config.containsKey("group.removed"));
+		verify(collection, never()).find(any(Bson.class));
+	}
+
+	private static RawBsonDocument raw(Document document)
+	{
+		return new RawBsonDocument(document, new DocumentCodec());
+	}
+
+	@Test
+	public void testSizeDelta()
+	{
+		Document before = new Document("group", new Document("key", "value").append("old", "value"));
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.key", "v");
+		assertEquals(-4L, ConfigService.sizeDelta(before, patch));
+
+		patch = new ConfigPatch();
+		patch.getUnset().add("group.old");
+		assertEquals(-(3 + 5 + 7), ConfigService.sizeDelta(before, patch));
+
+		// new entries are counted in utf-8 bytes
+		patch = new ConfigPatch();
+		patch.getEdit().put("group.new.key", "\u00e9");
+		assertEquals(7 + 2 + 7, ConfigService.sizeDelta(before, patch));
+		assertEquals(7 + 2 + 7, ConfigService.sizeDelta(null, patch));
+	}
+
+	@Test
+	public void testRepeatedEdits()
+	{
+		ConfigService configService = configService(1024L, 4096L);
+		AtomicLong size = new AtomicLong();
+		String[] value = new String[1];
+		when(collection.find(any(Bson.class)).projection(any(Bson.class)).first()).thenAnswer(invocation ->
+			value[0] == null ? null : new Document("_profile", new Document("rev", 1L).append("size", size.get()))
+				.append("group", new Document("key", value[0])));
+		when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class))).thenAnswer(invocation ->
+		{
+			BsonDocument update = render(invocation.getArgument(1));
+			size.set(update.getDocument("$set").getNumber("_profile.size").longValue());
+			return UpdateResult.acknowledged(1L, 1L, null);
+		});
+
+		// replacing a value doesn't grow the profile, so the edits keep being accepted
+		for (int i = 0; i < 100; ++i)
+		{
+			ConfigPatch patch = new ConfigPatch();
+			patch.getEdit().put("group.key", Strings.repeat(Integer.toString(i % 10), 1000));
+			assertEquals(Collections.emptyList(), configService.patchV3(1, 0L, patch).getFailures());
+			value[0] = patch.getEdit().get("group.key");
+		}
+
+		assertEquals(3 + 1000 + 7, size.get());
+	}
+
+	@Test
+	public void testUntrackedSize()
+	{
+		ConfigService configService = configService(1024L);
+		when(collection.find(any(Bson.class)).projection(any(Bson.class)).first())
+			.thenReturn(new Document("_profile", new Document("rev", 1L)));
+		when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class)))
+			.thenReturn(UpdateResult.acknowledged(1L, 1L, null));
+		RawBsonDocument profile = profile(1L, "value");
+		when(find.first()).thenReturn(profile);
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.new", "value");
+		assertEquals(2L, (long) configService.patchV3(1, 0L, patch).getRev());
+
+		// the profile is measured, and its size written with the patch
+		ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+		verify(collection).updateOne(any(Bson.class), update.capture(), any(UpdateOptions.class));
+		BsonDocument set = render(update.getValue()).getDocument("$set");
+		assertEquals(profile.getByteBuffer().remaining() + 3 + 5 + 7, set.getNumber("_profile.size").longValue());
+		assertEquals("value", set.getString("group.new").getValue());
+	}
+
+	@Test
+	public void testConcurrentPatch()
+	{
+		ConfigService configService = configService(1024L);
+		when(collection.find(any(Bson.class)).projection(any(Bson.class)).first())
+			.thenReturn(new Document("_profile", new Document("rev", 1L).append("size", 64L)))
+			.thenReturn(new Document("_profile", new Document("rev", 2L).append("size", 80L)));
+		// the first write loses to another patch of the same profile
+		when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class)))
+			.thenReturn(UpdateResult.acknowledged(0L, 0L, null))
+			.thenReturn(UpdateResult.acknowledged(1L, 1L, null));
+
+		ConfigPatch patch = new ConfigPatch();
+		patch.getEdit().put("group.key", "value");
+		assertEquals(3L, (long) configService.patchV3(1, 0L, patch).getRev());
+
+		ArgumentCaptor<Bson> filter = ArgumentCaptor.forClass(Bson.class);
+		ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+		verify(collection, times(2)).updateOne(filter.capture(), update.capture(), any(UpdateOptions.class));
+		assertEquals(80L + 3 + 5 + 7, render(update.getValue()).getDocument("$set").getNumber("_profile.size").longValue());
+		assertEquals(2L, render(filter.getValue()).getNumber("_profile.rev").longValue());
+		verify(collection, never()).findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class));
+	}
+
+	private static BsonDocument render(Bson bson)
+	{
+		return bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+	}
+
+	@Test
+	public void testEviction()
+	{
+		// smaller than the profile, so it is never kept
+		ConfigService configService = configService(4L);
+		when(find.first()).thenReturn(profile(1L, "value"));
+
+		configService.getV3(1, 0L);
+		configService.getV3(1, 0L);
+		verify(rawCollection, times(2)).find(any(Bson.class));
+	}
+}
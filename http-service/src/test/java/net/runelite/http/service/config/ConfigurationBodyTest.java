@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.config;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import net.runelite.http.api.RuneLiteAPI;
+import net.runelite.http.api.config.Configuration;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class ConfigurationBodyTest
+{
+	@Test
+	public void testStreamedMatchesUnpacked() throws Exception
+	{
+		Document document = new Document("_userId", 1)
+			.append("_profile", new Document("id", 0L).append("name", "default").append("rev", 42L))
+			.append("group", new Document("key", "value")
+				.append("rsprofile:abc:key", "v2")
+				.append("int", 5)
+				.append("null", null)
+				.append("list", Arrays.asList("a", "b")))
+			.append("other", new Document("nested", new Document("a", "b")));
+		RawBsonDocument raw = new RawBsonDocument(document, new DocumentCodec());
+
+		Configuration configuration = RawConfigReader.unpack(raw);
+		assertEquals(42L, configuration.getRev());
+		assertEquals("v2", configuration.getConfig().get("group.rsprofile.abc.key"));
+		assertEquals("5", configuration.getConfig().get("group.int"));
+		assertEquals(5, configuration.getConfig().size());
+
+		StringWriter streamed = new StringWriter();
+		ConfigurationBody.streamed(raw).writeTo(streamed);
+		assertEquals(RuneLiteAPI.GSON.toJson(configuration), streamed.toString());
+	}
+}
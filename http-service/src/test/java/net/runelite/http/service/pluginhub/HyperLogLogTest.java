@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.pluginhub;
+
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class HyperLogLogTest
+{
+	// expected values are from the redis implementation
+	@Test
+	public void testMurmurHash()
+	{
+		assertEquals(0xd8dfea6585bc9732L, hash(""));
+		assertEquals(0x53d2470a9b43b1a7L, hash("a"));
+		assertEquals(0x4101b163e6f01c5fL, hash("192.168.0.1"));
+		assertEquals(0x87caacddf93b0a78L, hash("2001:db8::ff00:42:8329"));
+		assertEquals(0x0fc444011f57220cL, hash("hello world!"));
+	}
+
+	@Test
+	public void testSparse()
+	{
+		HyperLogLog hll = new HyperLogLog();
+		hll.add("192.168.0.1".getBytes(StandardCharsets.UTF_8));
+		hll.add("2001:db8::ff00:42:8329".getBytes(StandardCharsets.UTF_8));
+
+		byte[] data = hll.serialize();
+		assertEquals(1, data[4]);
+		int[] registers = decode(data);
+		assertEquals(7, registers[7263]);
+		assertEquals(3, registers[2680]);
+	}
+
+	@Test
+	public void testDense()
+	{
+		HyperLogLog dense = new HyperLogLog();
+		HyperLogLog first = new HyperLogLog();
+		HyperLogLog second = new HyperLogLog();
+		for (int i = 0; i < 2000; ++i)
+		{
+			byte[] ip = ("10.0." + (i / 256) + "." + (i % 256)).getBytes(StandardCharsets.UTF_8);
+			dense.add(ip);
+			(i < 1000 ? first : second).add(ip);
+		}
+
+		byte[] data = dense.serialize();
+		assertEquals(0, data[4]);
+		assertEquals(16 + 12288, data.length);
+
+		int sum = 0;
+		for (int i = 16; i < data.length; ++i)
+		{
+			sum = sum * 31 + (data[i] & 0xff);
+		}
+		assertEquals((int) 2642406961L, sum);
+
+		// the union of the sparse halves is the same as the dense registers
+		byte[] firstData = first.serialize();
+		byte[] secondData = second.serialize();
+		assertEquals(1, firstData[4]);
+		assertEquals(1, secondData[4]);
+		int[] merged = decode(firstData);
+		int[] secondRegisters = decode(secondData);
+		for (int i = 0; i < merged.length; ++i)
+		{
+			merged[i] = Math.max(merged[i], secondRegisters[i]);
+		}
+		assertArrayEquals(decode(data), merged);
+	}
+
+	@Test
+	public void testMerge()
+	{
+		HyperLogLog all = new HyperLogLog();
+		HyperLogLog sparse = new HyperLogLog();
+		HyperLogLog dense = new HyperLogLog();
+		for (int i = 0; i < 2000; ++i)
+		{
+			byte[] ip = ("10.0." + (i / 256) + "." + (i % 256)).getBytes(StandardCharsets.UTF_8);
+			all.add(ip);
+			(i < 100 ? sparse : dense).add(ip);
+		}
+		assertEquals(1, sparse.serialize()[4]);
+		assertEquals(0, dense.serialize()[4]);
+
+		// merging in either direction gives the registers of the union
+		HyperLogLog merged = new HyperLogLog();
+		merged.merge(sparse);
+		assertArrayEquals(sparse.serialize(), merged.serialize());
+		merged.merge(dense);
+		assertArrayEquals(all.serialize(), merged.serialize());
+
+		dense.merge(sparse);
+		assertArrayEquals(all.serialize(), dense.serialize());
+	}
+
+	private static long hash(String s)
+	{
+		return HyperLogLog.murmurHash64A(s.getBytes(StandardCharsets.UTF_8), 0xadc83b19);
+	}
+
+	private static int[] decode(byte[] data)
+	{
+		int[] registers = new int[HyperLogLog.REGISTERS];
+		if (data[4] == 0)
+		{
+			for (int i = 0; i < registers.length; ++i)
+			{
+				int b = 16 + i * 6 / 8;
+				int fb = i * 6 & 7;
+				int b0 = data[b] & 0xff;
+				int b1 = b + 1 < data.length ? data[b + 1] & 0xff : 0;
+				registers[i] = ((b0 >> fb) | (b1 << (8 - fb))) & 63;
+			}
+			return registers;
+		}
+
+		int idx = 0;
+		for (int pos = 16; pos < data.length; )
+		{
+			int op = data[pos] & 0xff;
+			if ((op & 0xc0) == 0)
+			{
+				idx += (op & 0x3f) + 1;
+				pos++;
+			}
+			else if ((op & 0xc0) == 0x40)
+			{
+				idx += (((op & 0x3f) << 8) | (data[pos + 1] & 0xff)) + 1;
+				pos += 2;
+			}
+			else
+			{
+				int val = ((op >> 2) & 0x1f) + 1;
+				int len = (op & 3) + 1;
+				for (int i = 0; i < len; ++i)
+				{
+					registers[idx++] = val;
+				}
+				pos++;
+			}
+		}
+		assertEquals(HyperLogLog.REGISTERS, idx);
+		return registers;
+	}
+}
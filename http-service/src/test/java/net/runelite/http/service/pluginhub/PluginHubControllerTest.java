@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.pluginhub;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import net.runelite.http.service.util.redis.HotKeyTracker;
+import net.runelite.http.service.util.redis.RedisPool;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+public class PluginHubControllerTest
+{
+	private static final String LOCK_KEY = "pluginhub.merging.2026-10-19";
+	private static final String MERGED_KEY = "pluginhub.merged.2026-10-19";
+
+	private Jedis jedis;
+	private PluginHubController controller;
+	// the commands sent through pipelines, as the command name followed by its keys
+	private final List<List<String>> commands = new ArrayList<>();
+	private boolean failSync;
+
+	@BeforeEach
+	public void before()
+	{
+		// every pipelined command gets the same response, which is only read for pfcount
+		Response<Long> count = mock(Response.class);
+		when(count.get()).thenReturn(5L);
+		Pipeline pipeline = mock(Pipeline.class, invocation ->
+		{
+			List<String> command = new ArrayList<>();
+			command.add(invocation.getMethod().getName());
+			for (Object arg : invocation.getArguments())
+			{
+				if (arg instanceof String)
+				{
+					command.add((String) arg);
+				}
+			}
+			commands.add(command);
+			if (failSync && "sync".equals(invocation.getMethod().getName()))
+			{
+				failSync = false;
+				throw new JedisConnectionException("sync failed");
+			}
+			return invocation.getMethod().getReturnType() == Response.class ? count : null;
+		});
+
+		jedis = mock(Jedis.class);
+		when(jedis.pipelined()).thenReturn(pipeline);
+		when(jedis.smembers("pluginhub.plugins")).thenReturn(Collections.singleton("a"));
+
+		RedisPool redisPool = mock(RedisPool.class);
+		when(redisPool.getResource(anyString())).thenReturn(jedis);
+		when(redisPool.tag(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+		when(redisPool.groupByNode(any(), any())).thenAnswer(invocation ->
+		{
+			Collection<?> items = invocation.getArgument(0);
+			return items.isEmpty() ? Collections.emptyList() : Collections.singletonList(new ArrayList<>(items));
+		});
+
+		controller = new PluginHubController(redisPool, mock(HotKeyTracker.class), new SimpleMeterRegistry(), 7, new int[]{7, 30}, 90, 5000L);
+	}
+
+	@Test
+	public void testRebuildBeforeMerge()
+	{
+		// shortly after midnight the previous day may still be being flushed, so nothing is merged yet
+		controller.rebuild(Instant.parse("2026-10-19T00:05:00Z"));
+
+		verify(jedis, never()).set(anyString(), anyString(), anyString(), anyString(), anyLong());
+		// the windows ending yesterday are counted until then
+		assertEquals(Arrays.asList("pfcount", "pluginhub.a.7d.2026-10-18"), commands.get(0));
+		assertEquals(Arrays.asList(2, 2), pfcountKeys());
+		assertEquals(Collections.singletonMap("a", 5L), controller.get(30).getBody());
+	}
+
+	@Test
+	public void testRebuildLocked()
+	{
+		when(jedis.set(eq(LOCK_KEY), anyString(), anyString(), anyString(), anyLong())).thenReturn(null);
+
+		controller.rebuild(Instant.parse("2026-10-19T12:00:00Z"));
+
+		// another instance is merging, the windows ending yesterday are counted instead
+		assertEquals(Arrays.asList(2, 2), pfcountKeys());
+		assertEquals(Arrays.asList("pfcount", "pluginhub.a.30d.2026-10-18"), commands.get(1));
+		assertEquals(Collections.singletonMap("a", 5L), controller.get(7).getBody());
+		assertEquals(Collections.singletonMap("a", 5L), controller.get(30).getBody());
+	}
+
+	@Test
+	public void testRebuildMerged()
+	{
+		when(jedis.exists(MERGED_KEY)).thenReturn(true);
+
+		controller.rebuild(Instant.parse("2026-10-19T12:00:00Z"));
+
+		// each window is one key per plugin
+		assertEquals(Arrays.asList(2, 2), pfcountKeys());
+		assertEquals(Arrays.asList("pfcount", "pluginhub.a.7d.2026-10-19"), commands.get(0));
+	}
+
+	@Test
+	public void testRebuildPipelined()
+	{
+		when(jedis.exists(MERGED_KEY)).thenReturn(true);
+		when(jedis.smembers("pluginhub.plugins")).thenReturn(new HashSet<>(Arrays.asList("a", "b", "c")));
+
+		controller.rebuild(Instant.parse("2026-10-19T12:00:00Z"));
+
+		// every count of every window is sent in one pipeline
+		verify(jedis, times(1)).pipelined();
+		assertEquals(6, pfcountKeys().size());
+		assertEquals(3, controller.get(null).getBody().size());
+		assertEquals("{\"schemaVersion\":1,\"label\":\"Total installs\",\"message\":\"5\",\"color\":\"007bff\",\"isError\":false}",
+			controller.installs("b").getBody());
+	}
+
+	@Test
+	public void testMergeAfterFlush()
+	{
+		when(jedis.set(eq(LOCK_KEY), anyString(), anyString(), anyString(), anyLong())).thenReturn("OK");
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader("X-Forwarded-For")).thenReturn("127.0.0.1");
+		controller.submit(request, new String[]{"a"});
+
+		controller.rebuild(Instant.parse("2026-10-19T12:00:00Z"));
+
+		// the pending sketch is merged into its daily key before the windows are merged
+		int flush = -1;
+		int merge = -1;
+		for (int i = 0; i < commands.size(); ++i)
+		{
+			List<String> command = commands.get(i);
+			if (!"pfmerge".equals(command.get(0)))
+			{
+				continue;
+			}
+			// the sketch is merged from its temporary key, which is for the day it was submitted on
+			if (flush == -1 && command.size() == 3 && command.get(2).startsWith("pluginhub.tmp."))
+			{
+				flush = i;
+			}
+			if (merge == -1 && command.get(1).contains(".7d.") && !command.get(2).startsWith("pluginhub.tmp."))
+			{
+				merge = i;
+			}
+		}
+		assertTrue(flush != -1 && merge != -1 && flush < merge);
+		verify(jedis).setex(eq(MERGED_KEY), anyInt(), eq("1"));
+	}
+
+	@Test
+	public void testFlushRetry()
+	{
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader("X-Forwarded-For")).thenReturn("127.0.0.1");
+		controller.submit(request, new String[]{"a"});
+
+		// the sketch is kept after the failed flush and merged by the next one, after which nothing is pending
+		failSync = true;
+		controller.shutdown();
+		controller.shutdown();
+		controller.shutdown();
+
+		List<List<String>> merges = new ArrayList<>();
+		for (List<String> command : commands)
+		{
+			if ("pfmerge".equals(command.get(0)))
+			{
+				merges.add(command);
+			}
+		}
+		// each flush merges the sketch into the daily key and the key of each window
+		assertEquals(6, merges.size());
+		assertEquals(merges.subList(0, 3), merges.subList(3, 6));
+		assertEquals("pluginhub.a.7d." + LocalDate.now(ZoneOffset.UTC), merges.get(1).get(1));
+		assertEquals("pluginhub.a.30d." + LocalDate.now(ZoneOffset.UTC), merges.get(2).get(1));
+	}
+
+	private List<Integer> pfcountKeys()
+	{
+		List<Integer> keys = new ArrayList<>();
+		for (List<String> command : commands)
+		{
+			if ("pfcount".equals(command.get(0)))
+			{
+				keys.add(command.size());
+			}
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.pluginhub;
+
+import com.google.common.collect.ImmutableMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class PluginRanksTest
+{
+	@Test
+	public void testRanks()
+	{
+		PluginRanks ranks = new PluginRanks(ImmutableMap.of(
+			"a", 100L,
+			"b", 50L,
+			"c", 100L,
+			"d", 10L
+		));
+
+		assertEquals(1, ranks.getRank("a"));
+		assertEquals(1, ranks.getRank("c"));
+		assertEquals(3, ranks.getRank("b"));
+		assertEquals(4, ranks.getRank("d"));
+		assertEquals(-1, ranks.getRank("e"));
+	}
+
+	@Test
+	public void testShields()
+	{
+		PluginRanks ranks = new PluginRanks(ImmutableMap.of("a", 100L, "b", 50L));
+
+		assertEquals("{\"schemaVersion\":1,\"label\":\"Plugin rank\",\"message\":\"2\",\"color\":\"007bff\",\"isError\":false}", ranks.getRankJson("b"));
+		assertEquals("{\"schemaVersion\":1,\"label\":\"Total installs\",\"message\":\"-1\",\"color\":\"red\",\"isError\":true}", ranks.getInstallsJson("c"));
+	}
+}
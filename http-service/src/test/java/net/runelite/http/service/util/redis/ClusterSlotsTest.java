@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.util.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class ClusterSlotsTest
+{
+	@Test
+	public void testCrc16()
+	{
+		assertEquals(0x31C3, ClusterSlots.crc16("123456789".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testSlot()
+	{
+		assertEquals(12182, ClusterSlots.slot("foo"));
+		assertEquals(5061, ClusterSlots.slot("bar"));
+		assertEquals(866, ClusterSlots.slot("hello"));
+	}
+
+	@Test
+	public void testHashTag()
+	{
+		assertEquals(ClusterSlots.slot("user1000"), ClusterSlots.slot("{user1000}.following"));
+		assertEquals(ClusterSlots.slot("{user1000}.following"), ClusterSlots.slot("{user1000}.followers"));
+		// an empty tag hashes the whole key
+		assertEquals(ClusterSlots.crc16("foo{}{bar}".getBytes(StandardCharsets.UTF_8)) & (ClusterSlots.SLOTS - 1), ClusterSlots.slot("foo{}{bar}"));
+	}
+
+	@Test
+	public void testParse()
+	{
+		List<Object> reply = Arrays.asList(
+			range(0, 5460, "10.0.0.1", 7000),
+			range(5461, 10922, "10.0.0.2", 7001),
+			range(10923, 16383, "10.0.0.3", 7002)
+		);
+		ClusterSlots slots = ClusterSlots.parse(reply);
+
+		assertEquals("10.0.0.1:7000", slots.getNode(0));
+		assertEquals("10.0.0.1:7000", slots.getNode(866));
+		assertEquals("10.0.0.2:7001", slots.getNode(5461));
+		assertEquals("10.0.0.1:7000", slots.getNode(ClusterSlots.slot("bar")));
+		assertEquals("10.0.0.2:7001", slots.getNode(10922));
+		assertEquals("10.0.0.3:7002", slots.getNode(ClusterSlots.slot("foo")));
+		assertEquals("10.0.0.3:7002", slots.getNode(16383));
+		assertEquals(Arrays.asList("10.0.0.1:7000", "10.0.0.2:7001", "10.0.0.3:7002"), Arrays.asList(slots.getNodes().toArray()));
+	}
+
+	private static List<Object> range(long start, long end, String host, long port)
+	{
+		List<Object> master = Arrays.asList(host.getBytes(StandardCharsets.UTF_8), port, "id".getBytes(StandardCharsets.UTF_8));
+		// a replica, which is not routed to
+		List<Object> replica = Arrays.asList("10.0.1.1".getBytes(StandardCharsets.UTF_8), 7100L, "id2".getBytes(StandardCharsets.UTF_8));
+		return Arrays.asList(start, end, master, replica);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.runelite.http.service.util.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class HotKeyTrackerTest
+{
+	@Test
+	public void testTopKeys()
+	{
+		HotKeyTracker tracker = new HotKeyTracker(5, 100, new SimpleMeterRegistry());
+
+		int count = 0;
+		for (int i = 0; i < 1000; ++i)
+		{
+			count = tracker.record("kc.streamer.zulrah");
+			tracker.record("kc.player" + i + ".zulrah");
+			if (i % 2 == 0)
+			{
+				tracker.record("qp.streamer");
+			}
+		}
+
+		assertTrue(count >= 1000);
+		assertTrue(tracker.isHot(count));
+
+		List<HotKey> top = tracker.getTopKeys();
+		assertEquals(5, top.size());
+		assertEquals("kc.streamer.zulrah", top.get(0).getKey());
+		assertEquals("qp.streamer", top.get(1).getKey());
+		assertTrue(tracker.getHotKeys().stream().noneMatch(k -> k.getKey().startsWith("kc.player")));
+	}
+
+	@Test
+	public void testDecay()
+	{
+		HotKeyTracker tracker = new HotKeyTracker(5, 100, new SimpleMeterRegistry());
+
+		for (int i = 0; i < 150; ++i)
+		{
+			tracker.record("gc.streamer");
+		}
+		assertTrue(tracker.isHot(tracker.getTopKeys().get(0).getCount()));
+
+		tracker.decay();
+		assertFalse(tracker.isHot(tracker.getTopKeys().get(0).getCount()));
+		assertEquals(76, tracker.record("gc.streamer"));
+	}
+}